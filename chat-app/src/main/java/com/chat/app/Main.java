@@ -0,0 +1,115 @@
+package com.chat.app;
+
+import com.chat.cluster.ShardedRoomPlacement;
+import com.chat.core.AsyncLogHandler;
+import com.chat.core.ChatApplication;
+import com.chat.core.ChatRoomManager;
+import com.chat.core.DeliveryMode;
+import com.chat.core.OverflowPolicy;
+import com.chat.core.RateLimitPolicy;
+import com.chat.core.SendRateLimits;
+import com.chat.core.TenantQuota;
+import com.chat.core.User;
+import com.chat.storage.FsyncPolicy;
+import com.chat.storage.MappedMessageStore;
+import com.chat.transport.TransportMode;
+import com.chat.transport.WebSocketAdapter;
+import com.chat.transport.WebSocketServer;
+
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
+import java.util.*;
+
+// Example usage
+public class Main {
+    public static void main(String[] args) {
+        // Log records are formatted and written on a background thread; chat.log.bufferSize must be a power of two
+        AsyncLogHandler.install(Integer.getInteger("chat.log.bufferSize", 8192));
+
+        // e.g. -Dchat.transport=nio_selector -Dchat.port=8080 runs a real server instead of the demo
+        String transport = System.getProperty("chat.transport");
+        if (transport != null) {
+            serve(TransportMode.valueOf(transport.toUpperCase(Locale.ROOT)), Integer.getInteger("chat.port", 8080));
+            return;
+        }
+
+        ChatApplication chatApp = new ChatApplication(new WebSocketAdapter());
+
+        User alice = chatApp.createUser("Alice");
+        User bob = chatApp.createUser("Bob");
+        User charlie = chatApp.createUser("Charlie");
+
+        chatApp.createOrJoinRoom(alice, "Room123");
+        chatApp.createOrJoinRoom(bob, "Room123");
+        chatApp.createOrJoinRoom(charlie, "Room123");
+
+        chatApp.sendMessage(alice, "Hello, everyone!");
+        chatApp.sendMessage(bob, "How's it going?");
+        chatApp.sendPrivateMessage(charlie, "Bob", "Hey Bob, want to grab lunch?");
+
+        System.out.println("Active users in Room123: " + chatApp.getActiveUsers("Room123"));
+        System.out.println("Message history in Room123:");
+        chatApp.getMessageHistory("Room123").forEach(System.out::println);
+
+        chatApp.leaveRoom(charlie);
+        System.out.println("Active users in Room123 after Charlie left: " + chatApp.getActiveUsers("Room123"));
+
+        chatApp.shutdown();
+    }
+
+    private static void serve(TransportMode mode, int port) {
+        WebSocketServer server = WebSocketServer.create(mode, new InetSocketAddress(port),
+                Long.getLong("chat.pingIntervalMillis", 30_000), Integer.getInteger("chat.transport.threads", 512));
+        // e.g. -Dchat.cluster.self=a -Dchat.cluster.nodes=a@127.0.0.1:9001,b@127.0.0.1:9002 shards rooms across nodes
+        String clusterNodes = System.getProperty("chat.cluster.nodes");
+        // e.g. -Dchat.tenant.messagesPerSecond=500 -Dchat.tenant.maxPendingBytes=67108864 throttles this server's tenant
+        ChatRoomManager roomManager = new ChatRoomManager(System.getProperty("chat.tenant", "default"),
+                new TenantQuota(Integer.getInteger("chat.tenant.messagesPerSecond", 0),
+                        Integer.getInteger("chat.tenant.burstMessages", 0),
+                        Long.getLong("chat.tenant.maxPendingBytes", 0), Integer.getInteger("chat.tenant.maxRooms", 0)));
+        // e.g. -Dchat.store.dir=/var/lib/chat keeps every room's history on disk, so rooms survive a restart;
+        // -Dchat.store.fsync=EVERY_MESSAGE trades throughput for losing nothing acknowledged on a crash
+        String storeDir = System.getProperty("chat.store.dir");
+        if (storeDir != null) {
+            roomManager.setMessageStore(new MappedMessageStore(Paths.get(storeDir),
+                    Integer.getInteger("chat.store.segmentBytes", 64 << 20),
+                    FsyncPolicy.valueOf(
+                            System.getProperty("chat.store.fsync", "GROUP_COMMIT").toUpperCase(Locale.ROOT)),
+                    Long.getLong("chat.store.groupCommitMillis", 10)));
+        }
+        ShardedRoomPlacement cluster = clusterNodes != null
+                ? ShardedRoomPlacement.join(roomManager, System.getProperty("chat.cluster.self"), clusterNodes)
+                : null;
+        roomManager.setDeliveryMode(
+                DeliveryMode.valueOf(System.getProperty("chat.delivery", "ASYNCHRONOUS").toUpperCase(Locale.ROOT)));
+        // e.g. -Dchat.send.userPerSecond=20 -Dchat.send.userBurst=40 caps each client; room and global limits alike
+        roomManager.setSendRateLimits(new SendRateLimits(Integer.getInteger("chat.send.userPerSecond", 0),
+                        Integer.getInteger("chat.send.userBurst", 0), Integer.getInteger("chat.send.roomPerSecond", 0),
+                        Integer.getInteger("chat.send.roomBurst", 0), Integer.getInteger("chat.send.globalPerSecond", 0),
+                        Integer.getInteger("chat.send.globalBurst", 0)),
+                RateLimitPolicy.valueOf(System.getProperty("chat.send.policy", "REJECT").toUpperCase(Locale.ROOT)),
+                Long.getLong("chat.send.maxDelayMillis", 100));
+        long idleRoomTtl = Long.getLong("chat.room.idleTtlMillis", 600_000);
+        if (idleRoomTtl > 0) {
+            roomManager.startRoomReaper(idleRoomTtl, Math.max(1, idleRoomTtl / 4));
+        }
+        WebSocketAdapter adapter = new WebSocketAdapter(server);
+        ChatApplication chatApp = new ChatApplication(adapter, roomManager);
+        chatApp.configureOutboundQueues(Integer.getInteger("chat.outbound.capacity", 1024),
+                OverflowPolicy.valueOf(System.getProperty("chat.outbound.overflow", "DROP_OLDEST")),
+                Long.getLong("chat.outbound.maxLagMillis", 30_000));
+        adapter.start(chatApp);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            adapter.close();
+            if (cluster != null) {
+                cluster.close();
+            }
+            chatApp.shutdown();
+        }));
+        try {
+            Thread.currentThread().join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
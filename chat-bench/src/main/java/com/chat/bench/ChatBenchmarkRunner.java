@@ -0,0 +1,28 @@
+package com.chat.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Runs the suite once per sender count with the GC profiler attached, so every run reports throughput,
+// average and p99 latency and allocation rate. Usage: java -cp benchmarks.jar com.chat.bench.ChatBenchmarkRunner [regex]
+public class ChatBenchmarkRunner {
+    private static final int[] SENDER_COUNTS = {1, 4, 16, 64};
+
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : "ChatRoom|MessageCodec|Logging|Membership|Ordering|Timestamp|TenantIsolation|RateLimiter";
+        for (int senders : SENDER_COUNTS) {
+            Options options = new OptionsBuilder()
+                    .include(include)
+                    .threads(senders)
+                    .addProfiler(GCProfiler.class)
+                    .result("jmh-result-" + senders + "-senders.json")
+                    .resultFormat(ResultFormatType.JSON)
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.chat.bench;
+
+import com.chat.core.ChatMessage;
+import com.chat.core.ChatRoom;
+import com.chat.core.DeliveryMode;
+import com.chat.core.FanOutEngine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Fan-out cost of ChatRoom.broadcastMessage and ChatRoom.notify by room size, message kind, history size and
+// delivery mode. Run with -t <senders> (or through ChatBenchmarkRunner) to add concurrent senders.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChatRoomBenchmark {
+    @Param({"1", "100", "10000", "100000"})
+    public int roomSize;
+
+    @Param({"false", "true"})
+    public boolean privateMessage;
+
+    @Param({"1000", "100000"})
+    public int historyCapacity;
+
+    @Param({"SYNCHRONOUS", "ASYNCHRONOUS", "BATCHED"})
+    public DeliveryMode deliveryMode;
+
+    private FanOutEngine fanOutEngine;
+    private ChatRoom room;
+    private String recipient;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fanOutEngine = new FanOutEngine(Runtime.getRuntime().availableProcessors());
+        room = new ChatRoom("bench", deliveryMode, fanOutEngine.newRoomExecutor(), historyCapacity);
+        for (int i = 0; i < roomSize; i++) {
+            DrainingSink.connectedUser("user" + i).joinRoom(room);
+        }
+        recipient = "user" + (roomSize - 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fanOutEngine.shutdown();
+    }
+
+    @Benchmark
+    public ChatMessage broadcastMessage() {
+        ChatMessage message = newMessage();
+        room.broadcastMessage(message);
+        return message;
+    }
+
+    // Delivery alone, without sequencing or history
+    @Benchmark
+    public ChatMessage notifyMembers() {
+        ChatMessage message = newMessage();
+        room.notify(message);
+        return message;
+    }
+
+    private ChatMessage newMessage() {
+        return privateMessage
+                ? new ChatMessage("user0", "benchmark message", true, recipient)
+                : new ChatMessage("user0", "benchmark message", false, null);
+    }
+}
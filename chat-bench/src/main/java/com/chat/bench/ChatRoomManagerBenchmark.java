@@ -0,0 +1,104 @@
+package com.chat.bench;
+
+import com.chat.core.ChatRoom;
+import com.chat.core.ChatRoomManager;
+import com.chat.core.DeliveryMode;
+import com.chat.core.User;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Room lookup and creation through ChatRoomManager, and membership changes through User.joinRoom
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChatRoomManagerBenchmark {
+    @Param({"10", "10000"})
+    public int roomCount;
+
+    private ChatRoomManager manager;
+    private String[] roomIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        manager = new ChatRoomManager();
+        manager.setDeliveryMode(DeliveryMode.SYNCHRONOUS);
+        roomIds = new String[roomCount];
+        for (int i = 0; i < roomCount; i++) {
+            roomIds[i] = "bench-room-" + i;
+            manager.createRoom(roomIds[i]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (String roomId : roomIds) {
+            manager.removeRoom(roomId);
+        }
+        manager.shutdown();
+    }
+
+    @Benchmark
+    public ChatRoom getRoom() {
+        return manager.getRoom(randomRoomId());
+    }
+
+    // Existing room: the common path, which must not allocate a new ChatRoom
+    @Benchmark
+    public ChatRoom createExistingRoom() {
+        return manager.createRoom(randomRoomId());
+    }
+
+    @Benchmark
+    public ChatRoom createAndRemoveRoom() {
+        String roomId = "bench-transient-" + Thread.currentThread().getId();
+        ChatRoom room = manager.createRoom(roomId);
+        manager.removeRoom(roomId);
+        return room;
+    }
+
+    // Each sender has its own user hopping between rooms, so every call is a leave plus a join
+    @State(Scope.Thread)
+    public static class Member {
+        User user;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            user = DrainingSink.connectedUser("bench-member-" + Thread.currentThread().getId());
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            user.leaveAllRooms();
+        }
+    }
+
+    // Leaves first so every invocation changes membership instead of piling up subscriptions
+    @Benchmark
+    public User joinRoom(Member member) {
+        member.user.leaveRoom();
+        member.user.joinRoom(manager.getRoom(randomRoomId()));
+        return member.user;
+    }
+
+    private String randomRoomId() {
+        return roomIds[ThreadLocalRandom.current().nextInt(roomIds.length)];
+    }
+}
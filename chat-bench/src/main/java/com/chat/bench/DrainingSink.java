@@ -0,0 +1,36 @@
+package com.chat.bench;
+
+import com.chat.core.EncodedFrame;
+import com.chat.core.FrameSink;
+import com.chat.core.OutboundQueue;
+import com.chat.core.OverflowPolicy;
+import com.chat.core.User;
+
+// Stands in for a transport that writes instantly: releases every queued frame as soon as it is announced,
+// so benchmarks measure the chat core rather than System.out or socket I/O.
+class DrainingSink implements FrameSink {
+    private final User user;
+
+    DrainingSink(User user) {
+        this.user = user;
+    }
+
+    static User connectedUser(String username) {
+        User user = new User(username, new OutboundQueue(64, OverflowPolicy.DROP_OLDEST, Long.MAX_VALUE));
+        user.setFrameSink(new DrainingSink(user));
+        return user;
+    }
+
+    @Override
+    public void framesAvailable() {
+        EncodedFrame frame;
+        while ((frame = user.getOutboundQueue().poll()) != null) {
+            frame.release();
+        }
+    }
+
+    @Override
+    public void disconnect() {
+        throw new IllegalStateException("Benchmark user " + user.getUsername() + " was evicted");
+    }
+}
@@ -0,0 +1,78 @@
+package com.chat.bench;
+
+import com.chat.core.AsyncLogHandler;
+import com.chat.core.ChatMessage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+import java.util.logging.StreamHandler;
+
+// Per-message cost on the sending thread of the broadcast log line: the old concatenated LOGGER.info call
+// against the guarded, parameterized call, each through a synchronous handler and through AsyncLogHandler,
+// with INFO enabled and disabled. Both handlers format into a discarding stream, so only the sender-side
+// work differs; with the async handler a sender that outruns the appender drops records rather than waiting.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoggingBenchmark {
+    @Param({"false", "true"})
+    public boolean async;
+
+    @Param({"INFO", "WARNING"})
+    public String level;
+
+    private final Logger logger = Logger.getLogger(LoggingBenchmark.class.getName());
+    private final String roomId = "Room123";
+    private Handler handler;
+    private ChatMessage message;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Handler sink = new StreamHandler(OutputStream.nullOutputStream(), new SimpleFormatter());
+        handler = async ? new AsyncLogHandler(sink, 8192) : sink;
+        logger.setUseParentHandlers(false);
+        logger.addHandler(handler);
+        logger.setLevel(java.util.logging.Level.parse(level));
+        message = new ChatMessage("Alice", "Hello everyone, how is the release going?", false, null, "Room123",
+                System.currentTimeMillis(), 123_456);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        logger.removeHandler(handler);
+        handler.close();
+    }
+
+    @Benchmark
+    public void concatenated() {
+        logger.info("Message broadcast in room " + roomId + ": " + message);
+    }
+
+    @Benchmark
+    public void guardedParameterized() {
+        if (logger.isLoggable(java.util.logging.Level.INFO)) {
+            logger.logp(java.util.logging.Level.INFO, LoggingBenchmark.class.getName(), "guardedParameterized",
+                    "Message broadcast in room {0}: {1}", new Object[]{roomId, message});
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.chat.bench;
+
+import com.chat.core.User;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Broadcast iteration and membership change cost of the live ConcurrentHashMap that ChatRoom used to iterate
+// against the copy-on-write member array it iterates now. Only the data structures are measured, so the
+// numbers isolate walking the members from encoding and queueing (see ChatRoomBenchmark for those).
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MembershipBenchmark {
+    @Param({"10", "1000", "100000"})
+    public int roomSize;
+
+    private final Map<String, User> map = new ConcurrentHashMap<>();
+    private volatile User[] snapshot;
+    private User extra;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        User[] users = new User[roomSize];
+        for (int i = 0; i < roomSize; i++) {
+            users[i] = new User("user" + i);
+            map.put(users[i].getUsername(), users[i]);
+        }
+        snapshot = users;
+        extra = new User("joiner");
+    }
+
+    @Benchmark
+    public void iterateMap(Blackhole blackhole) {
+        for (User user : map.values()) {
+            blackhole.consume(user);
+        }
+    }
+
+    @Benchmark
+    public void iterateSnapshot(Blackhole blackhole) {
+        for (User user : snapshot) {
+            blackhole.consume(user);
+        }
+    }
+
+    // One join followed by one leave
+    @Benchmark
+    public void joinLeaveMap() {
+        map.put(extra.getUsername(), extra);
+        map.remove(extra.getUsername());
+    }
+
+    @Benchmark
+    public void joinLeaveSnapshot() {
+        User[] current = snapshot;
+        User[] joined = Arrays.copyOf(current, current.length + 1);
+        joined[current.length] = extra;
+        snapshot = joined;
+        int index = 0;
+        while (joined[index] != extra) {
+            index++; // the room scans for the leaving member the same way
+        }
+        User[] left = new User[joined.length - 1];
+        System.arraycopy(joined, 0, left, 0, index);
+        System.arraycopy(joined, index + 1, left, index, joined.length - index - 1);
+        snapshot = left;
+    }
+}
@@ -0,0 +1,73 @@
+package com.chat.bench;
+
+import com.chat.core.ChatMessage;
+import com.chat.core.MessageCodec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+// MessageCodec against the text encodings it replaces: ChatMessage.toString (String.format) and a
+// hand-built JSON string, which is a lower bound for what a JSON library would cost.
+@State(Scope.Thread)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageCodecBenchmark {
+    private final MessageCodec codec = new MessageCodec();
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(4096);
+    private ChatMessage message;
+    private ByteBuffer encoded;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        message = new ChatMessage("Alice", "Hello everyone, how is the release going?", true, "Bob", "Room123",
+                System.currentTimeMillis(), 123_456);
+        encoded = ByteBuffer.allocateDirect(codec.encodedLength(message));
+        codec.encode(message, encoded);
+        encoded.flip();
+    }
+
+    @Benchmark
+    public int binaryEncode() {
+        buffer.clear();
+        codec.encode(message, buffer);
+        return buffer.position();
+    }
+
+    @Benchmark
+    public ChatMessage binaryDecode() {
+        encoded.rewind();
+        return codec.decode(encoded);
+    }
+
+    @Benchmark
+    public byte[] stringFormatEncode() {
+        return message.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] jsonEncode() {
+        String json = "{\"seq\":" + message.getSequence()
+                + ",\"ts\":\"" + message.getTimestamp()
+                + "\",\"sender\":\"" + message.getSender()
+                + "\",\"private\":" + message.isPrivate()
+                + ",\"recipient\":\"" + message.getRecipient()
+                + "\",\"content\":\"" + message.getContent() + "\"}";
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,137 @@
+package com.chat.bench;
+
+import com.chat.core.ChatMessage;
+import com.chat.core.ChatRoom;
+import com.chat.core.DeliveryMode;
+import com.chat.core.EncodedFrame;
+import com.chat.core.FanOutEngine;
+import com.chat.core.FrameSink;
+import com.chat.core.MessageCodec;
+import com.chat.core.OutboundQueue;
+import com.chat.core.OverflowPolicy;
+import com.chat.core.User;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+// Ordering stress for ChatRoom.broadcastMessage: 64 senders (or ChatBenchmarkRunner's counts) broadcast into
+// one room whose members decode every frame they receive and check that sequences arrive strictly in order,
+// without gaps. The trial fails if any member saw a message out of order; the score is the cost of ordered
+// ingest and fan-out under contention.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(64)
+@Fork(1)
+public class OrderingBenchmark {
+    @Param({"SYNCHRONOUS", "ASYNCHRONOUS", "BATCHED"})
+    public DeliveryMode deliveryMode;
+
+    @Param({"16"})
+    public int roomSize;
+
+    private FanOutEngine fanOutEngine;
+    private ChatRoom room;
+    private final List<OrderCheckingSink> sinks = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fanOutEngine = new FanOutEngine(Runtime.getRuntime().availableProcessors());
+        room = new ChatRoom("ordering", deliveryMode, fanOutEngine.newRoomExecutor(), 1000);
+        for (int i = 0; i < roomSize; i++) {
+            User user = new User("member" + i, new OutboundQueue(1024, OverflowPolicy.DISCONNECT, Long.MAX_VALUE));
+            OrderCheckingSink sink = new OrderCheckingSink(user);
+            user.setFrameSink(sink);
+            user.joinRoom(room);
+            sinks.add(sink);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        // Batched rooms may still hold a timed flush; let it reach the members before the workers stop
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        for (OrderCheckingSink sink : sinks) {
+            while (sink.lastSequence() < room.getLastSequence() && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+        }
+        fanOutEngine.shutdown();
+        for (OrderCheckingSink sink : sinks) {
+            if (sink.violation() != null) {
+                throw new IllegalStateException(sink.violation());
+            }
+            if (sink.lastSequence() != room.getLastSequence()) {
+                throw new IllegalStateException(sink.user.getUsername() + " received up to sequence "
+                        + sink.lastSequence() + " of " + room.getLastSequence());
+            }
+        }
+    }
+
+    @Benchmark
+    public ChatMessage broadcastMessage() {
+        ChatMessage message = new ChatMessage("sender", "ordering stress", false, null);
+        room.broadcastMessage(message);
+        return message;
+    }
+
+    // Decodes every message in each frame, as a client would, and records the first ordering violation
+    private static final class OrderCheckingSink implements FrameSink {
+        private final User user;
+        private final MessageCodec codec = new MessageCodec();
+        private long lastSequence;
+        private String violation;
+
+        OrderCheckingSink(User user) {
+            this.user = user;
+        }
+
+        // Fan-out threads may announce frames concurrently; draining one at a time keeps the queue order
+        @Override
+        public synchronized void framesAvailable() {
+            EncodedFrame frame;
+            while ((frame = user.getOutboundQueue().poll()) != null) {
+                ByteBuffer messages = frame.view();
+                while (messages.hasRemaining()) {
+                    long sequence = codec.decode(messages).getSequence();
+                    if (sequence != lastSequence + 1 && violation == null) {
+                        violation = user.getUsername() + " received sequence " + sequence + " after " + lastSequence;
+                    }
+                    lastSequence = sequence;
+                }
+                frame.release();
+            }
+        }
+
+        synchronized long lastSequence() {
+            return lastSequence;
+        }
+
+        synchronized String violation() {
+            return violation;
+        }
+
+        @Override
+        public synchronized void disconnect() {
+            violation = user.getUsername() + " was evicted";
+        }
+    }
+}
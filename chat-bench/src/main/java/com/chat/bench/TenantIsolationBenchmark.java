@@ -0,0 +1,99 @@
+package com.chat.bench;
+
+import com.chat.core.ChatMessage;
+import com.chat.core.ChatRoom;
+import com.chat.core.ChatRoomManager;
+import com.chat.core.DeliveryMode;
+import com.chat.core.QuotaExceededException;
+import com.chat.core.TenantMetrics;
+import com.chat.core.TenantQuota;
+import com.chat.core.TenantRegistry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+// Noisy-neighbour check for TenantRegistry: three threads flood a tenant with a message-rate and pending-bytes
+// quota while one thread sends at will for an unlimited tenant, both fanning out through the shared workers.
+// Compare the quiet score with the noisy threads' own; the trial fails if the quiet tenant was ever refused.
+@State(Scope.Group)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TenantIsolationBenchmark {
+    @Param({"ASYNCHRONOUS", "BATCHED"})
+    public DeliveryMode deliveryMode;
+
+    @Param({"16"})
+    public int roomSize;
+
+    private TenantRegistry registry;
+    private ChatRoom noisyRoom;
+    private ChatRoom quietRoom;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        registry = new TenantRegistry(Runtime.getRuntime().availableProcessors());
+        noisyRoom = openRoom(registry.register("noisy", new TenantQuota(10_000, 1_000, 1 << 20, 0)));
+        quietRoom = openRoom(registry.register("quiet", TenantQuota.UNLIMITED));
+    }
+
+    private ChatRoom openRoom(ChatRoomManager manager) {
+        manager.setDeliveryMode(deliveryMode);
+        ChatRoom room = manager.createRoom(manager.getTenantId() + "-room");
+        for (int i = 0; i < roomSize; i++) {
+            DrainingSink.connectedUser(manager.getTenantId() + i).joinRoom(room);
+        }
+        return room;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Map<String, TenantMetrics> metrics = registry.getMetrics();
+        registry.shutdown();
+        metrics.values().forEach(System.out::println);
+        TenantMetrics quiet = metrics.get("quiet");
+        if (quiet.getRateLimitedMessages() + quiet.getMemoryLimitedMessages() > 0) {
+            throw new IllegalStateException("The unlimited tenant was throttled: " + quiet);
+        }
+    }
+
+    // Returns whether the quota let the message through
+    @Benchmark
+    @Group("tenants")
+    @GroupThreads(3)
+    public boolean noisy() {
+        try {
+            noisyRoom.broadcastMessage(new ChatMessage("flooder", "noisy tenant traffic", false, null));
+            return true;
+        } catch (QuotaExceededException e) {
+            return false;
+        }
+    }
+
+    @Benchmark
+    @Group("tenants")
+    @GroupThreads(1)
+    public ChatMessage quiet() {
+        ChatMessage message = new ChatMessage("sender", "quiet tenant traffic", false, null);
+        quietRoom.broadcastMessage(message);
+        return message;
+    }
+}
@@ -0,0 +1,64 @@
+package com.chat.bench;
+
+import com.chat.core.ChatClock;
+import com.chat.core.ChatMessage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+// Cost of timestamping a message: the LocalDateTime.now() every ChatMessage used to take against the cached
+// ChatClock it reads now, alone and as part of constructing a message. Run through ChatBenchmarkRunner (or
+// with -prof gc) so gc.alloc.rate.norm shows the bytes saved per message next to the time saved.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime, Mode.Throughput})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TimestampBenchmark {
+    private final ChatMessage message = new ChatMessage("Alice", "Hello", false, null);
+
+    @Benchmark
+    public LocalDateTime localDateTimeNow() {
+        return LocalDateTime.now();
+    }
+
+    @Benchmark
+    public long systemClock() {
+        return System.currentTimeMillis();
+    }
+
+    @Benchmark
+    public long cachedClock() {
+        return ChatClock.currentTimeMillis();
+    }
+
+    // What a message cost before: the message plus the LocalDateTime its constructor used to take
+    @Benchmark
+    public void newMessageWithLocalDateTime(Blackhole blackhole) {
+        blackhole.consume(new ChatMessage("Alice", "Hello", false, null));
+        blackhole.consume(LocalDateTime.now());
+    }
+
+    @Benchmark
+    public void newMessage(Blackhole blackhole) {
+        blackhole.consume(new ChatMessage("Alice", "Hello", false, null));
+    }
+
+    // The conversion display code still pays, now only when a message is shown
+    @Benchmark
+    public LocalDateTime displayTimestamp() {
+        return message.getTimestamp();
+    }
+}
@@ -0,0 +1,508 @@
+package com.chat.cluster;
+
+import com.chat.core.ChatMessage;
+import com.chat.core.ChatRoom;
+import com.chat.core.ChatRoomManager;
+import com.chat.core.EncodedFrame;
+import com.chat.core.MessageCodec;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Node-to-node TCP link that carries work for a room to the node owning it. Every frame is
+// [int length][byte type][long correlation id][body]; a response carries the correlation id of its request.
+// Each connection has one blocking reader thread, and writes to a connection are serialized by a lock.
+// Forwards are queued per peer and written by a sender thread, so a room's caller never waits on a connect.
+public class ClusterLink {
+    private static final Logger LOGGER = Logger.getLogger(ClusterLink.class.getName());
+    private static final MessageCodec CODEC = new MessageCodec();
+    static final byte FORWARD = 1;        // [room][codec frame]; no response
+    static final byte HISTORY_RECENT = 2; // [room]
+    static final byte HISTORY_AFTER = 3;  // [room][long sequence][int limit]
+    static final byte HISTORY_BEFORE = 4; // [room][long sequence][int limit]
+    static final byte HISTORY = 5;        // response: [int count]([int length][codec frame])*
+    static final byte BATCH = 6;          // message bus: [int count]([int length][codec frame])*; no response
+    private static final int MAX_FRAME_BYTES = 16 * 1024 * 1024;
+    private static final int CONNECT_TIMEOUT_MILLIS = 2_000;
+    private static final long REQUEST_TIMEOUT_MILLIS = 5_000;
+    private static final int MAX_QUEUED_FORWARDS = 65_536;
+    private static final int MAX_FORWARD_BATCH = 512;
+    private final ClusterNode self;
+    private final ChatRoomManager roomManager;
+    private final Map<String, Peer> peers = new ConcurrentHashMap<>();
+    private final Map<Long, CompletableFuture<List<ChatMessage>>> pending = new ConcurrentHashMap<>();
+    private final AtomicLong correlationIds = new AtomicLong();
+    private final Set<Socket> inboundSockets = ConcurrentHashMap.newKeySet();
+    private final ExecutorService sender;
+    private ServerSocket serverSocket;
+    private volatile boolean running;
+
+    public ClusterLink(ClusterNode self, ChatRoomManager roomManager) {
+        this.self = self;
+        this.roomManager = roomManager;
+        this.sender = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "chat-cluster-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void start() {
+        try {
+            serverSocket = new ServerSocket();
+            serverSocket.setReuseAddress(true);
+            serverSocket.bind(self.getAddress());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot bind cluster link to " + self.getAddress(), e);
+        }
+        running = true;
+        Thread acceptor = new Thread(this::acceptLoop, "chat-cluster-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        LOGGER.info("Cluster node " + self.getId() + " listening on port " + getPort());
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    // At most once and without blocking: if the owner cannot be reached, or too many forwards are already
+    // waiting for it, the message is logged and dropped
+    public void forward(ClusterNode owner, String roomId, ChatMessage message) {
+        ByteBuffer frame = ByteBuffer.allocate(CODEC.encodedLength(message));
+        CODEC.encode(message, frame);
+        ByteArrayOutputStream body = new ByteArrayOutputStream(frame.capacity() + roomId.length() + 8);
+        try {
+            DataOutputStream out = new DataOutputStream(body);
+            out.writeUTF(roomId);
+            out.write(frame.array());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // in memory; cannot happen
+        }
+        peer(owner).queueForward(body.toByteArray());
+    }
+
+    // Broadcasts from rooms this node owns, for the proxies on the other node. At most once, like forward.
+    public void sendBatch(ClusterNode node, List<EncodedFrame> frames) {
+        int bytes = 4;
+        for (EncodedFrame frame : frames) {
+            bytes += 4 + frame.length();
+        }
+        ByteBuffer body = ByteBuffer.allocate(bytes);
+        body.putInt(frames.size());
+        for (EncodedFrame frame : frames) {
+            body.putInt(frame.length());
+            frame.copyTo(body);
+        }
+        try {
+            peer(node).send(BATCH, 0, body.array());
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not send " + frames.size() + " broadcasts to node " + node.getId(), e);
+        }
+    }
+
+    // Reads history from the owner; empty if the owner does not answer within the request timeout
+    public List<ChatMessage> history(ClusterNode owner, String roomId, byte type, long sequence, int limit) {
+        long correlationId = correlationIds.incrementAndGet();
+        CompletableFuture<List<ChatMessage>> response = new CompletableFuture<>();
+        pending.put(correlationId, response);
+        try {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(body);
+            out.writeUTF(roomId);
+            if (type != HISTORY_RECENT) {
+                out.writeLong(sequence);
+                out.writeInt(limit);
+            }
+            peer(owner).send(type, correlationId, body.toByteArray());
+            return response.get(REQUEST_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (IOException | ExecutionException | TimeoutException e) {
+            LOGGER.log(Level.WARNING, "History request for room " + roomId + " to node " + owner.getId() + " failed", e);
+            return Collections.emptyList();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Collections.emptyList();
+        } finally {
+            pending.remove(correlationId);
+        }
+    }
+
+    // Sends the forwards already queued, then closes every connection
+    public void close() {
+        running = false;
+        sender.shutdown();
+        try {
+            if (!sender.awaitTermination(5, TimeUnit.SECONDS)) {
+                sender.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            sender.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Error closing cluster server socket", e);
+        }
+        for (Socket socket : inboundSockets) {
+            closeQuietly(socket);
+        }
+        for (Peer peer : peers.values()) {
+            peer.close();
+        }
+    }
+
+    private Peer peer(ClusterNode node) {
+        return peers.computeIfAbsent(node.getId(), id -> new Peer(node));
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                inboundSockets.add(socket);
+                Thread reader = new Thread(() -> serve(socket), "chat-cluster-in-" + socket.getPort());
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                if (running) {
+                    LOGGER.log(Level.WARNING, "Cluster accept failed", e);
+                }
+            }
+        }
+    }
+
+    // Requests from one peer, answered in order on the same connection. Only a broken stream ends the connection:
+    // every frame is read whole first, so a request that is malformed or fails leaves the next one readable.
+    private void serve(Socket socket) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            while (running) {
+                int length = in.readInt();
+                if (length < 9 || length > MAX_FRAME_BYTES) {
+                    throw new IOException("Bad cluster frame length " + length);
+                }
+                byte type = in.readByte();
+                long correlationId = in.readLong();
+                byte[] body = new byte[length - 9];
+                in.readFully(body);
+                byte[] response;
+                try {
+                    response = handle(type, body);
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Cluster request of type " + type + " failed", e);
+                    // A history request still gets its answer, so the requester need not wait out its timeout
+                    response = type == FORWARD || type == BATCH ? null : encodeHistory(Collections.emptyList());
+                }
+                if (response != null) {
+                    writeFrame(out, HISTORY, correlationId, response);
+                    out.flush();
+                }
+            }
+        } catch (EOFException e) {
+            LOGGER.fine("Cluster peer disconnected");
+        } catch (IOException e) {
+            if (running) {
+                LOGGER.log(Level.WARNING, "Cluster connection failed", e);
+            }
+        } finally {
+            inboundSockets.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    // The body of the response, or null for a request that has none. The body is already in memory, so an
+    // IOException here means it is malformed.
+    private byte[] handle(byte type, byte[] body) throws IOException {
+        if (type == BATCH) {
+            receiveBatch(ByteBuffer.wrap(body));
+            return null;
+        }
+        DataInputStream request = new DataInputStream(new ByteArrayInputStream(body));
+        String roomId = request.readUTF();
+        if (type == FORWARD) {
+            ChatMessage message = CODEC.decode(ByteBuffer.wrap(body, body.length - request.available(),
+                    request.available()));
+            receiveForward(roomId, message);
+            return null;
+        }
+        List<ChatMessage> history = type == HISTORY_RECENT
+                ? readHistory(roomId, type, 0, 0)
+                : readHistory(roomId, type, request.readLong(), request.readInt());
+        return encodeHistory(history);
+    }
+
+    private void receiveForward(String roomId, ChatMessage message) {
+        if (!roomManager.isLocalRoom(roomId)) {
+            // The nodes disagree about the ring; forwarding again could loop
+            LOGGER.warning("Dropping message for room " + roomId + " forwarded to node " + self.getId()
+                    + ", which does not own it");
+            return;
+        }
+        roomManager.broadcast(roomId, message);
+    }
+
+    private void receiveBatch(ByteBuffer body) {
+        int count = body.getInt();
+        for (int i = 0; i < count; i++) {
+            int length = body.getInt();
+            if (length < 0 || length > body.remaining()) {
+                throw new IllegalArgumentException("Bad cluster batch frame length " + length);
+            }
+            ByteBuffer frame = body.slice(body.position(), length);
+            body.position(body.position() + length);
+            while (frame.hasRemaining()) {
+                roomManager.receiveReplicated(CODEC.decode(frame)); // a batched broadcast holds several
+            }
+        }
+    }
+
+    private List<ChatMessage> readHistory(String roomId, byte type, long sequence, int limit) {
+        ChatRoom room = roomManager.isLocalRoom(roomId) ? roomManager.getRoom(roomId) : null;
+        if (room == null) {
+            return Collections.emptyList();
+        }
+        switch (type) {
+            case HISTORY_RECENT:
+                return room.getMessageHistory();
+            case HISTORY_AFTER:
+                return room.getMessageHistory(sequence, limit);
+            case HISTORY_BEFORE:
+                return room.getMessageHistoryBefore(sequence, limit);
+            default:
+                throw new IllegalArgumentException("Unknown cluster request type " + type);
+        }
+    }
+
+    private static byte[] encodeHistory(List<ChatMessage> history) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(body);
+        out.writeInt(history.size());
+        for (ChatMessage message : history) {
+            ByteBuffer frame = ByteBuffer.allocate(CODEC.encodedLength(message));
+            CODEC.encode(message, frame);
+            out.writeInt(frame.capacity());
+            out.write(frame.array());
+        }
+        return body.toByteArray();
+    }
+
+    // Every count and length is checked against the bytes that are actually there before anything is allocated
+    private static List<ChatMessage> decodeHistory(ByteBuffer body) {
+        int count = body.getInt();
+        if (count < 0 || count > body.remaining() / 4) {
+            throw new IllegalArgumentException("Bad cluster history count " + count);
+        }
+        List<ChatMessage> history = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int length = body.getInt();
+            if (length < 0 || length > body.remaining()) {
+                throw new IllegalArgumentException("Bad cluster history frame length " + length);
+            }
+            history.add(CODEC.decode(body.slice(body.position(), length)));
+            body.position(body.position() + length);
+        }
+        return history;
+    }
+
+    private static void writeFrame(DataOutputStream out, byte type, long correlationId, byte[] body)
+            throws IOException {
+        out.writeInt(9 + body.length);
+        out.writeByte(type);
+        out.writeLong(correlationId);
+        out.write(body);
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Error closing cluster socket", e);
+        }
+    }
+
+    // Outbound connection to one node, opened on first use and reopened on the next send after a failure
+    private final class Peer {
+        private final ClusterNode node;
+        private final Lock writeLock = new ReentrantLock();
+        private final Queue<byte[]> forwards = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger queuedForwards = new AtomicInteger();
+        private final AtomicBoolean forwardsScheduled = new AtomicBoolean();
+        private final AtomicLong droppedForwards = new AtomicLong();
+        private Socket socket;
+        private DataOutputStream out;
+
+        Peer(ClusterNode node) {
+            this.node = node;
+        }
+
+        void queueForward(byte[] body) {
+            if (queuedForwards.incrementAndGet() > MAX_QUEUED_FORWARDS) {
+                queuedForwards.decrementAndGet();
+                if (droppedForwards.getAndIncrement() == 0) {
+                    LOGGER.warning("Forwards to cluster node " + node.getId() + " are falling behind; dropping them");
+                }
+                return;
+            }
+            forwards.add(body);
+            scheduleForwards();
+        }
+
+        private void scheduleForwards() {
+            if (forwardsScheduled.compareAndSet(false, true)) {
+                try {
+                    sender.execute(this::sendForwards);
+                } catch (RejectedExecutionException e) {
+                    forwardsScheduled.set(false);
+                    discardForwards(); // the link is closed
+                }
+            }
+        }
+
+        // Sender thread: whatever has queued up goes out back to back, with one flush per batch
+        private void sendForwards() {
+            List<byte[]> batch = new ArrayList<>();
+            try {
+                byte[] body;
+                while ((body = forwards.poll()) != null) {
+                    batch.add(body);
+                    if (batch.size() == MAX_FORWARD_BATCH || forwards.isEmpty()) {
+                        queuedForwards.addAndGet(-batch.size());
+                        try {
+                            send(FORWARD, 0, batch);
+                        } catch (IOException e) {
+                            LOGGER.log(Level.WARNING, "Could not forward " + batch.size() + " messages to node "
+                                    + node.getId(), e);
+                        }
+                        batch.clear();
+                    }
+                }
+            } finally {
+                forwardsScheduled.set(false);
+                if (!forwards.isEmpty()) {
+                    scheduleForwards();
+                }
+            }
+        }
+
+        private void discardForwards() {
+            while (forwards.poll() != null) {
+                queuedForwards.decrementAndGet();
+            }
+        }
+
+        void send(byte type, long correlationId, byte[] body) throws IOException {
+            send(type, correlationId, List.of(body));
+        }
+
+        private void send(byte type, long correlationId, List<byte[]> bodies) throws IOException {
+            writeLock.lock();
+            try {
+                if (socket == null) {
+                    connect();
+                }
+                try {
+                    for (byte[] body : bodies) {
+                        writeFrame(out, type, correlationId, body);
+                    }
+                    out.flush();
+                } catch (IOException e) {
+                    disconnect();
+                    throw e;
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+        private void connect() throws IOException {
+            Socket connected = new Socket();
+            try {
+                connected.connect(node.getAddress(), CONNECT_TIMEOUT_MILLIS);
+                connected.setTcpNoDelay(true);
+            } catch (IOException e) {
+                closeQuietly(connected);
+                throw e;
+            }
+            socket = connected;
+            out = new DataOutputStream(new BufferedOutputStream(connected.getOutputStream()));
+            Thread reader = new Thread(() -> readResponses(connected), "chat-cluster-peer-" + node.getId());
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        private void disconnect() {
+            if (socket != null) {
+                closeQuietly(socket);
+                socket = null;
+                out = null;
+            }
+        }
+
+        void close() {
+            writeLock.lock();
+            try {
+                disconnect();
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+        private void readResponses(Socket connected) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(connected.getInputStream()))) {
+                while (true) {
+                    int length = in.readInt();
+                    if (length < 9 || length > MAX_FRAME_BYTES) {
+                        throw new IOException("Bad cluster frame length " + length);
+                    }
+                    in.readByte(); // HISTORY is the only response type
+                    long correlationId = in.readLong();
+                    byte[] body = new byte[length - 9];
+                    in.readFully(body);
+                    CompletableFuture<List<ChatMessage>> response = pending.get(correlationId);
+                    if (response == null) {
+                        continue; // the request already timed out
+                    }
+                    try {
+                        response.complete(decodeHistory(ByteBuffer.wrap(body)));
+                    } catch (RuntimeException e) {
+                        response.completeExceptionally(e); // the frame was read whole, so the next one is intact
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Connection to cluster node " + node.getId() + " ended", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.chat.cluster;
+
+import java.net.InetSocketAddress;
+import java.util.*;
+
+// One chat node: a stable id, which places it on the hash ring, and the address its ClusterLink listens on
+public final class ClusterNode {
+    private final String id;
+    private final InetSocketAddress address;
+
+    public ClusterNode(String id, InetSocketAddress address) {
+        this.id = id;
+        this.address = address;
+    }
+
+    // Parses "id@host:port"
+    public static ClusterNode parse(String spec) {
+        int at = spec.indexOf('@');
+        int colon = spec.lastIndexOf(':');
+        if (at <= 0 || colon < at) {
+            throw new IllegalArgumentException("Expected id@host:port but got " + spec);
+        }
+        return new ClusterNode(spec.substring(0, at),
+                new InetSocketAddress(spec.substring(at + 1, colon), Integer.parseInt(spec.substring(colon + 1))));
+    }
+
+    // Parses a comma-separated list of "id@host:port"
+    public static List<ClusterNode> parseAll(String specs) {
+        List<ClusterNode> nodes = new ArrayList<>();
+        for (String spec : specs.split(",")) {
+            if (!spec.isBlank()) {
+                nodes.add(parse(spec.trim()));
+            }
+        }
+        return nodes;
+    }
+
+    public String getId() { return id; }
+    public InetSocketAddress getAddress() { return address; }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof ClusterNode && id.equals(((ClusterNode) other).id);
+    }
+
+    @Override
+    public int hashCode() {
+        return id.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return id + "@" + address.getHostString() + ":" + address.getPort();
+    }
+}
@@ -0,0 +1,65 @@
+package com.chat.cluster;
+
+import java.util.*;
+
+// Immutable consistent-hash ring. Each node is placed at many virtual points so rooms spread evenly, and
+// adding or removing a node only moves the rooms on the arcs it gains or loses. Lookups binary-search a
+// sorted primitive array and take no locks.
+public final class ConsistentHashRing {
+    public static final int DEFAULT_VIRTUAL_NODES = 128;
+    private final long[] points;
+    private final ClusterNode[] owners;
+    private final List<ClusterNode> nodes;
+
+    public ConsistentHashRing(Collection<ClusterNode> nodes, int virtualNodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("A hash ring needs at least one node");
+        }
+        this.nodes = List.copyOf(new LinkedHashSet<>(nodes));
+        SortedMap<Long, ClusterNode> ring = new TreeMap<>();
+        for (ClusterNode node : this.nodes) {
+            for (int v = 0; v < virtualNodes; v++) {
+                ring.put(hash(node.getId() + "#" + v), node);
+            }
+        }
+        this.points = new long[ring.size()];
+        this.owners = new ClusterNode[ring.size()];
+        int index = 0;
+        for (Map.Entry<Long, ClusterNode> point : ring.entrySet()) {
+            points[index] = point.getKey();
+            owners[index] = point.getValue();
+            index++;
+        }
+    }
+
+    // The first node clockwise from the key's hash
+    public ClusterNode ownerOf(String key) {
+        int index = Arrays.binarySearch(points, hash(key));
+        if (index < 0) {
+            index = -index - 1;
+            if (index == points.length) {
+                index = 0;
+            }
+        }
+        return owners[index];
+    }
+
+    public List<ClusterNode> getNodes() {
+        return nodes;
+    }
+
+    // FNV-1a over the UTF-16 code units, finished with a 64-bit mix so similar ids land far apart
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
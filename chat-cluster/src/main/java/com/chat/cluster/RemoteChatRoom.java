@@ -0,0 +1,46 @@
+package com.chat.cluster;
+
+import com.chat.core.ChatMessage;
+import com.chat.core.ChatRoom;
+import com.chat.core.DeliveryMode;
+
+import java.util.*;
+import java.util.concurrent.Executor;
+
+// Local stand-in for a room owned by another node. Local users join it as usual; messages sent to it are
+// forwarded to the owner, which numbers, stores and delivers them, and history is read back from the owner.
+class RemoteChatRoom extends ChatRoom {
+    private final ClusterNode owner;
+    private final ClusterLink link;
+
+    RemoteChatRoom(String roomId, DeliveryMode deliveryMode, Executor fanOutExecutor, ClusterNode owner,
+                   ClusterLink link) {
+        super(roomId, deliveryMode, fanOutExecutor, 1); // history lives on the owner
+        this.owner = owner;
+        this.link = link;
+    }
+
+    @Override
+    public void broadcastMessage(ChatMessage message) {
+        link.forward(owner, getRoomId(), message);
+    }
+
+    @Override
+    public List<ChatMessage> getMessageHistory() {
+        return link.history(owner, getRoomId(), ClusterLink.HISTORY_RECENT, 0, 0);
+    }
+
+    @Override
+    public List<ChatMessage> getMessageHistory(long afterSequence, int limit) {
+        return link.history(owner, getRoomId(), ClusterLink.HISTORY_AFTER, afterSequence, limit);
+    }
+
+    @Override
+    public List<ChatMessage> getMessageHistoryBefore(long beforeSequence, int limit) {
+        return link.history(owner, getRoomId(), ClusterLink.HISTORY_BEFORE, beforeSequence, limit);
+    }
+
+    public ClusterNode getOwner() {
+        return owner;
+    }
+}
@@ -0,0 +1,69 @@
+package com.chat.cluster;
+
+import com.chat.core.ChatRoom;
+import com.chat.core.ChatRoomManager;
+import com.chat.core.DeliveryMode;
+import com.chat.core.RoomPlacement;
+
+import java.util.concurrent.Executor;
+
+// Places rooms on nodes by consistent hashing of the room id. Every node must be started with the same node
+// list so that they agree on each room's owner.
+public class ShardedRoomPlacement implements RoomPlacement {
+    private final ConsistentHashRing ring;
+    private final ClusterNode self;
+    private final ClusterLink link;
+    private TcpMessageBus messageBus;
+
+    public ShardedRoomPlacement(ConsistentHashRing ring, ClusterNode self, ClusterLink link) {
+        if (!ring.getNodes().contains(self)) {
+            throw new IllegalArgumentException("Node " + self.getId() + " is not on the hash ring");
+        }
+        this.ring = ring;
+        this.self = self;
+        this.link = link;
+    }
+
+    // Starts this node's link and switches the manager into cluster mode; call before any room is created
+    public static ShardedRoomPlacement join(ChatRoomManager roomManager, String selfId, String nodeSpecs) {
+        ConsistentHashRing ring = new ConsistentHashRing(ClusterNode.parseAll(nodeSpecs),
+                ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+        ClusterNode self = ring.getNodes().stream()
+                .filter(node -> node.getId().equals(selfId))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Node " + selfId + " is not in " + nodeSpecs));
+        ClusterLink link = new ClusterLink(self, roomManager);
+        ShardedRoomPlacement placement = new ShardedRoomPlacement(ring, self, link);
+        link.start();
+        placement.messageBus = new TcpMessageBus(ring.getNodes(), self, link,
+                Integer.getInteger("chat.cluster.busQueue", TcpMessageBus.DEFAULT_MAX_QUEUED));
+        roomManager.setMessageBus(placement.messageBus);
+        roomManager.setRoomPlacement(placement);
+        return placement;
+    }
+
+    @Override
+    public boolean isLocal(String roomId) {
+        return ring.ownerOf(roomId).equals(self);
+    }
+
+    @Override
+    public ChatRoom openRemoteRoom(String roomId, DeliveryMode deliveryMode, Executor fanOutExecutor) {
+        return new RemoteChatRoom(roomId, deliveryMode, fanOutExecutor, ring.ownerOf(roomId), link);
+    }
+
+    public ClusterNode ownerOf(String roomId) {
+        return ring.ownerOf(roomId);
+    }
+
+    public ClusterLink getLink() {
+        return link;
+    }
+
+    public void close() {
+        if (messageBus != null) {
+            messageBus.close();
+        }
+        link.close();
+    }
+}
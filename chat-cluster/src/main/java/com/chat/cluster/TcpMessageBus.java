@@ -0,0 +1,34 @@
+package com.chat.cluster;
+
+import com.chat.core.BatchingMessageBus;
+import com.chat.core.EncodedFrame;
+
+import java.util.*;
+
+// Message bus over the cluster links: every broadcast of a room this node owns goes, batched, to every other
+// node, and nodes without local members in the room ignore it
+class TcpMessageBus extends BatchingMessageBus {
+    static final int DEFAULT_MAX_QUEUED = 65_536;
+    private final Map<String, ClusterNode> peers = new LinkedHashMap<>();
+    private final ClusterLink link;
+
+    TcpMessageBus(Collection<ClusterNode> nodes, ClusterNode self, ClusterLink link, int maxQueued) {
+        super(maxQueued);
+        for (ClusterNode node : nodes) {
+            if (!node.equals(self)) {
+                peers.put(node.getId(), node);
+            }
+        }
+        this.link = link;
+    }
+
+    @Override
+    protected Collection<String> destinations() {
+        return peers.keySet();
+    }
+
+    @Override
+    protected void sendBatch(String destination, List<EncodedFrame> frames) {
+        link.sendBatch(peers.get(destination), frames);
+    }
+}
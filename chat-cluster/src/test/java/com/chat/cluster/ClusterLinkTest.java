@@ -0,0 +1,160 @@
+package com.chat.cluster;
+
+import com.chat.core.ChatMessage;
+import com.chat.core.ChatRoomManager;
+import com.chat.core.EncodedFrame;
+import com.chat.core.FrameSink;
+import com.chat.core.MessageCodec;
+import com.chat.core.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Two nodes on loopback, each a manager with its own link, as two processes would be
+class ClusterLinkTest {
+    private static final FrameSink NO_SINK = new FrameSink() {
+        @Override
+        public void framesAvailable() {
+        }
+
+        @Override
+        public void disconnect() {
+        }
+    };
+
+    private final MessageCodec codec = new MessageCodec();
+    private ChatRoomManager managerA;
+    private ChatRoomManager managerB;
+    private ShardedRoomPlacement nodeA;
+    private ShardedRoomPlacement nodeB;
+
+    @BeforeEach
+    void startNodes() throws IOException {
+        String specs = "a@127.0.0.1:" + freePort() + ",b@127.0.0.1:" + freePort();
+        managerA = new ChatRoomManager();
+        managerB = new ChatRoomManager();
+        nodeA = ShardedRoomPlacement.join(managerA, "a", specs);
+        nodeB = ShardedRoomPlacement.join(managerB, "b", specs);
+    }
+
+    @AfterEach
+    void stopNodes() {
+        nodeA.close();
+        nodeB.close();
+        managerA.shutdown();
+        managerB.shutdown();
+    }
+
+    @Test
+    void bothNodesAgreeOnEveryRoomsOwner() {
+        Set<String> owners = new HashSet<>();
+        for (int i = 0; i < 64; i++) {
+            String roomId = "room-" + i;
+            assertEquals(nodeA.ownerOf(roomId), nodeB.ownerOf(roomId));
+            assertNotEquals(managerA.isLocalRoom(roomId), managerB.isLocalRoom(roomId));
+            owners.add(nodeA.ownerOf(roomId).getId());
+        }
+        assertEquals(Set.of("a", "b"), owners); // both nodes own some rooms
+    }
+
+    // bob's message goes to the owner, which delivers it to carol and, over the bus, back to bob's node
+    @Test
+    void messagesSentOnTheOtherNodeReachTheOwnersRoom() throws InterruptedException {
+        String roomId = roomOwnedBy("a");
+        User carol = connect(managerA, "carol", roomId);
+        User bob = connect(managerB, "bob", roomId);
+
+        assertTrue(bob.sendMessage(roomId, "hello from b"));
+
+        assertEquals("hello from b", awaitMessage(carol).getContent());
+        assertEquals("hello from b", awaitMessage(bob).getContent());
+        List<ChatMessage> history = managerB.getRoom(roomId).getMessageHistory(); // read back from the owner
+        assertEquals(1, history.size());
+        assertEquals("hello from b", history.get(0).getContent());
+    }
+
+    @Test
+    void aMalformedRequestLeavesTheConnectionOpen() throws IOException {
+        String roomId = roomOwnedBy("a");
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), nodeA.getLink().getPort())) {
+            socket.setSoTimeout(5000);
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            DataOutputStream request = new DataOutputStream(body);
+            request.writeUTF(roomId);
+            request.write(new byte[] {9, 9, 9}); // not a codec frame
+            writeFrame(out, ClusterLink.FORWARD, 0, body.toByteArray());
+
+            body.reset();
+            request.writeUTF(roomId);
+            writeFrame(out, ClusterLink.HISTORY_RECENT, 42, body.toByteArray());
+
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            int length = in.readInt();
+            assertEquals(ClusterLink.HISTORY, in.readByte());
+            assertEquals(42, in.readLong());
+            assertEquals(13, length); // an empty history: just the count
+            assertEquals(0, in.readInt());
+        }
+    }
+
+    private String roomOwnedBy(String nodeId) {
+        for (int i = 0; ; i++) {
+            if (nodeA.ownerOf("room-" + i).getId().equals(nodeId)) {
+                return "room-" + i;
+            }
+        }
+    }
+
+    private static User connect(ChatRoomManager manager, String username, String roomId) {
+        User user = new User(username);
+        user.setFrameSink(NO_SINK);
+        manager.connectUser(user);
+        manager.joinRoom(user, roomId);
+        return user;
+    }
+
+    private ChatMessage awaitMessage(User user) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        EncodedFrame frame;
+        while ((frame = user.getOutboundQueue().poll()) == null) {
+            assertTrue(System.currentTimeMillis() < deadline, "no message for " + user.getUsername());
+            Thread.sleep(10);
+        }
+        try {
+            return codec.decode(frame.view());
+        } finally {
+            frame.release();
+        }
+    }
+
+    private static void writeFrame(DataOutputStream out, byte type, long correlationId, byte[] body)
+            throws IOException {
+        out.writeInt(9 + body.length);
+        out.writeByte(type);
+        out.writeLong(correlationId);
+        out.write(body);
+        out.flush();
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
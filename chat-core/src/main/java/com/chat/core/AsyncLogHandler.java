@@ -0,0 +1,136 @@
+package com.chat.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+// Hands log records to a background thread through a bounded lock-free ring, so the thread that logs never
+// formats or does I/O itself; the wrapped handler formats and writes on the appender thread. When the ring is
+// full the record is dropped and counted rather than blocking the sender, and the appender reports the count.
+// Log with parameters ("... {0}", args) rather than concatenation so messages are formatted off the hot path.
+public class AsyncLogHandler extends Handler {
+    private final Handler delegate;
+    private final AtomicReferenceArray<LogRecord> slots;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong(); // next sequence a producer claims
+    private volatile long head;                       // next sequence the appender reads
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread appender;
+    private volatile boolean parked;
+    private volatile boolean closed;
+
+    public AsyncLogHandler(Handler delegate, int capacity) {
+        if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a positive power of two: " + capacity);
+        }
+        this.delegate = delegate;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+        this.appender = new Thread(this::drain, "chat-log-appender");
+        appender.setDaemon(true);
+        appender.start();
+    }
+
+    // Replaces each handler on the root logger with an asynchronous wrapper around it
+    public static void install(int capacity) {
+        Logger root = Logger.getLogger("");
+        for (Handler handler : root.getHandlers()) {
+            if (!(handler instanceof AsyncLogHandler)) {
+                root.removeHandler(handler);
+                root.addHandler(new AsyncLogHandler(handler, capacity));
+            }
+        }
+    }
+
+    @Override
+    public boolean isLoggable(LogRecord record) {
+        return !closed && delegate.isLoggable(record);
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+        if (!isLoggable(record)) {
+            return;
+        }
+        // Caller inference walks the stack, so it has to happen here rather than on the appender thread
+        record.getSourceClassName();
+        long sequence;
+        do {
+            sequence = tail.get();
+            if (sequence - head >= slots.length()) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } while (!tail.compareAndSet(sequence, sequence + 1));
+        slots.set((int) sequence & mask, record);
+        if (parked) {
+            LockSupport.unpark(appender);
+        }
+    }
+
+    private void drain() {
+        long reportedDrops = 0;
+        while (true) {
+            int index = (int) head & mask;
+            LogRecord record = slots.get(index);
+            if (record == null) {
+                if (head == tail.get()) {
+                    if (closed) {
+                        return;
+                    }
+                    parked = true;
+                    if (slots.get(index) == null) {
+                        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+                    }
+                    parked = false;
+                } else {
+                    Thread.yield(); // a producer claimed the slot but has not stored its record yet
+                }
+                continue;
+            }
+            slots.set(index, null);
+            head = head + 1;
+            delegate.publish(record);
+            long drops = dropped.get();
+            if (drops != reportedDrops && head == tail.get()) {
+                LogRecord warning = new LogRecord(Level.WARNING, "Log buffer full; dropped {0} records");
+                warning.setParameters(new Object[]{drops - reportedDrops});
+                warning.setLoggerName(AsyncLogHandler.class.getName());
+                delegate.publish(warning);
+                reportedDrops = drops;
+            }
+        }
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    // Waits until every record published so far has reached the wrapped handler
+    @Override
+    public void flush() {
+        long target = tail.get();
+        while (head < target && appender.isAlive()) {
+            LockSupport.unpark(appender);
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+        delegate.flush();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(appender);
+        try {
+            appender.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        delegate.close();
+    }
+}
@@ -0,0 +1,147 @@
+package com.chat.core;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+// Per-destination outboxes in front of a bus transport. publish only retains the room's shared frame once per
+// destination; a flusher thread takes whatever has queued up for a destination and sends it as one batch, so
+// bursts coalesce into few sends per node while an idle bus adds no delay. A destination that falls more than
+// maxQueued frames behind loses the newest frames rather than holding up the rooms.
+public abstract class BatchingMessageBus implements MessageBus {
+    private static final Logger LOGGER = Logger.getLogger(BatchingMessageBus.class.getName());
+    private static final int MAX_BATCH_FRAMES = 512;
+    private final int maxQueued;
+    private final ExecutorService flusher;
+    private final Map<String, Outbox> outboxes = new ConcurrentHashMap<>();
+
+    protected BatchingMessageBus(int maxQueued) {
+        this.maxQueued = maxQueued;
+        this.flusher = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "chat-bus-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Ids of the nodes every broadcast goes to
+    protected abstract Collection<String> destinations();
+
+    // Sends one batch of frames, oldest first; the bus releases the frames once this returns
+    protected abstract void sendBatch(String destination, List<EncodedFrame> frames);
+
+    @Override
+    public void publish(EncodedFrame frame) {
+        for (String destination : destinations()) {
+            outboxes.computeIfAbsent(destination, Outbox::new).offer(frame);
+        }
+    }
+
+    public long getDroppedCount() {
+        long dropped = 0;
+        for (Outbox outbox : outboxes.values()) {
+            dropped += outbox.dropped.get();
+        }
+        return dropped;
+    }
+
+    // Sends what is already queued, then stops the flusher
+    @Override
+    public void close() {
+        flusher.shutdown();
+        try {
+            if (!flusher.awaitTermination(5, TimeUnit.SECONDS)) {
+                flusher.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            flusher.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        for (Outbox outbox : outboxes.values()) {
+            outbox.discard();
+        }
+    }
+
+    private final class Outbox {
+        private final String destination;
+        private final Queue<EncodedFrame> frames = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger queued = new AtomicInteger();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicLong dropped = new AtomicLong();
+
+        Outbox(String destination) {
+            this.destination = destination;
+        }
+
+        void offer(EncodedFrame frame) {
+            if (queued.incrementAndGet() > maxQueued) {
+                queued.decrementAndGet();
+                if (dropped.getAndIncrement() == 0) {
+                    LOGGER.warning("Message bus to node " + destination + " is falling behind; dropping broadcasts");
+                }
+                return;
+            }
+            frames.add(frame.retain());
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    flusher.execute(this::flush);
+                } catch (RejectedExecutionException e) {
+                    scheduled.set(false);
+                    discard(); // the bus is closed
+                }
+            }
+        }
+
+        private void flush() {
+            List<EncodedFrame> batch = new ArrayList<>();
+            try {
+                EncodedFrame frame;
+                while ((frame = frames.poll()) != null) {
+                    batch.add(frame);
+                    if (batch.size() == MAX_BATCH_FRAMES || frames.isEmpty()) {
+                        queued.addAndGet(-batch.size());
+                        send(batch);
+                        batch.clear();
+                    }
+                }
+            } finally {
+                scheduled.set(false);
+                if (!frames.isEmpty()) {
+                    schedule();
+                }
+            }
+        }
+
+        private void send(List<EncodedFrame> batch) {
+            try {
+                sendBatch(destination, batch);
+            } catch (RuntimeException e) {
+                LOGGER.warning("Message bus batch to node " + destination + " failed: " + e);
+            } finally {
+                for (EncodedFrame frame : batch) {
+                    frame.release();
+                }
+            }
+        }
+
+        void discard() {
+            EncodedFrame frame;
+            while ((frame = frames.poll()) != null) {
+                queued.decrementAndGet();
+                frame.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.chat.core;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+// Coalesces a room's messages into batches for DeliveryMode.BATCHED. A batch is flushed on the room's serial
+// executor once the window has passed or maxBatch messages are waiting. The window adapts: it doubles (up to
+// the configured maximum) while flushes keep finding several messages and halves down to zero while they find
+// one, so an idle room delivers immediately and a busy room amortizes fan-out over many messages.
+class BroadcastBatcher {
+    static final long MAX_WINDOW_NANOS =
+            TimeUnit.MICROSECONDS.toNanos(Long.getLong("chat.batch.maxWindowMicros", 2_000));
+    static final int MAX_BATCH = Integer.getInteger("chat.batch.maxMessages", 64);
+    private static final long MIN_WINDOW_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    // One timer thread for every room; it only hands due flushes to the rooms' executors
+    private static final class Timer {
+        static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "chat-batch-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private final Executor roomExecutor;
+    private final Consumer<List<ChatMessage>> sink;
+    private final long maxWindowNanos;
+    private final int maxBatch;
+    private final Queue<ChatMessage> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile long windowNanos; // written only by flush, which the room executor serializes
+
+    BroadcastBatcher(Executor roomExecutor, Consumer<List<ChatMessage>> sink) {
+        this(roomExecutor, sink, MAX_WINDOW_NANOS, MAX_BATCH);
+    }
+
+    BroadcastBatcher(Executor roomExecutor, Consumer<List<ChatMessage>> sink, long maxWindowNanos, int maxBatch) {
+        if (maxBatch < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + maxBatch);
+        }
+        this.roomExecutor = roomExecutor;
+        this.sink = sink;
+        this.maxWindowNanos = maxWindowNanos;
+        this.maxBatch = maxBatch;
+    }
+
+    void offer(ChatMessage message) {
+        pending.add(message);
+        int waiting = pendingCount.incrementAndGet();
+        if (scheduled.compareAndSet(false, true)) {
+            long window = windowNanos;
+            if (window == 0 || waiting >= maxBatch) {
+                roomExecutor.execute(this::flush);
+            } else {
+                Timer.INSTANCE.schedule(() -> roomExecutor.execute(this::flush), window, TimeUnit.NANOSECONDS);
+            }
+        } else if (waiting == maxBatch) {
+            // A full batch does not wait for the timer; the timed flush later takes whatever is left
+            roomExecutor.execute(this::flush);
+        }
+    }
+
+    private void flush() {
+        try {
+            // The count trails the queue while an offer is between its add and its increment, and can dip below zero
+            List<ChatMessage> batch = new ArrayList<>(Math.max(1, Math.min(pendingCount.get(), maxBatch)));
+            ChatMessage message;
+            while (batch.size() < maxBatch && (message = pending.poll()) != null) {
+                batch.add(message);
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            pendingCount.addAndGet(-batch.size());
+            adapt(batch.size());
+            sink.accept(batch);
+        } finally {
+            scheduled.set(false);
+            if (!pending.isEmpty() && scheduled.compareAndSet(false, true)) {
+                roomExecutor.execute(this::flush); // a backlog is already a batch; no point waiting longer
+            }
+        }
+    }
+
+    // Delivers whatever is waiting now; call on the room executor, like flush
+    void flushPending() {
+        while (!pending.isEmpty()) {
+            flush();
+        }
+    }
+
+    private void adapt(int batchSize) {
+        long window = windowNanos;
+        if (batchSize > 1) {
+            windowNanos = Math.min(maxWindowNanos, Math.max(MIN_WINDOW_NANOS, window * 2));
+        } else {
+            window /= 2;
+            windowNanos = window < MIN_WINDOW_NANOS ? 0 : window;
+        }
+    }
+
+    long getWindowNanos() {
+        return windowNanos;
+    }
+}
@@ -0,0 +1,120 @@
+package com.chat.core;
+
+import java.util.*;
+import java.util.logging.Logger;
+
+// Chat Application
+public class ChatApplication {
+    private static final Logger LOGGER = Logger.getLogger(ChatApplication.class.getName());
+    private final ChatRoomManager roomManager;
+    private final CommunicationAdapter communicationAdapter;
+    private volatile int outboundCapacity = 1024;
+    private volatile OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+    private volatile long maxLagMillis = 30_000;
+
+    public ChatApplication(CommunicationAdapter communicationAdapter) {
+        this(communicationAdapter, ChatRoomManager.getInstance());
+    }
+
+    // Rooms and users live in the given manager, so several applications can run side by side in one JVM
+    public ChatApplication(CommunicationAdapter communicationAdapter, ChatRoomManager roomManager) {
+        this.roomManager = Objects.requireNonNull(roomManager, "roomManager");
+        this.communicationAdapter = communicationAdapter;
+    }
+
+    // Applies to users created after the call
+    public void configureOutboundQueues(int capacity, OverflowPolicy overflowPolicy, long maxLagMillis) {
+        this.outboundCapacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        this.maxLagMillis = maxLagMillis;
+    }
+
+    // For a transport thread that serves many connections, such as a selector: under the DELAY rate limit
+    // policy a send made on it is refused rather than parking the thread
+    public static void refuseSendDelaysOnCurrentThread() {
+        SendThrottle.refuseWaitsOnCurrentThread();
+    }
+
+    public User createUser(String username) {
+        return createUser(username, null);
+    }
+
+    // The sink is attached before the user connects, so private messages queued while they were offline reach
+    // the transport rather than the fallback in User.update
+    public User createUser(String username, FrameSink frameSink) {
+        User user = new User(username, new OutboundQueue(outboundCapacity, overflowPolicy, maxLagMillis));
+        user.setFrameSink(frameSink);
+        roomManager.connectUser(user);
+        LOGGER.info("Created new user: " + username);
+        return user;
+    }
+
+    // Private messages for the user are queued from now on until a session with the same name connects
+    public void disconnectUser(User user) {
+        user.leaveAllRooms();
+        roomManager.disconnectUser(user);
+    }
+
+    // Subscribes the user alongside the rooms they already joined
+    public void createOrJoinRoom(User user, String roomId) {
+        roomManager.joinRoom(user, roomId);
+    }
+
+    // Leaves the user's current room; other subscriptions stay
+    public void leaveRoom(User user) {
+        user.leaveRoom();
+    }
+
+    public void leaveRoom(User user, String roomId) {
+        user.leaveRoom(roomId);
+    }
+
+    // The sends return false, and skip the adapter, when the message was refused (see User.sendMessage)
+    public boolean sendMessage(User user, String content) {
+        if (!user.sendMessage(content)) {
+            return false;
+        }
+        communicationAdapter.sendMessage(new ChatMessage(user.getUsername(), content, false, null));
+        return true;
+    }
+
+    public boolean sendMessage(User user, String roomId, String content) {
+        if (!user.sendMessage(roomId, content)) {
+            return false;
+        }
+        communicationAdapter.sendMessage(new ChatMessage(user.getUsername(), content, false, null));
+        return true;
+    }
+
+    public boolean sendPrivateMessage(User sender, String recipient, String content) {
+        if (!sender.sendPrivateMessage(content, recipient)) {
+            return false;
+        }
+        communicationAdapter.sendMessage(new ChatMessage(sender.getUsername(), content, true, recipient));
+        return true;
+    }
+
+    public List<String> getActiveUsers(String roomId) {
+        ChatRoom room = roomManager.getRoom(roomId);
+        return room != null ? room.getActiveUsers() : Collections.emptyList();
+    }
+
+    public List<ChatMessage> getMessageHistory(String roomId) {
+        ChatRoom room = roomManager.getRoom(roomId);
+        return room != null ? room.getMessageHistory() : Collections.emptyList();
+    }
+
+    public List<ChatMessage> getMessageHistory(String roomId, long afterSequence, int limit) {
+        ChatRoom room = roomManager.getRoom(roomId);
+        return room != null ? room.getMessageHistory(afterSequence, limit) : Collections.emptyList();
+    }
+
+    public List<ChatMessage> getMessageHistoryBefore(String roomId, long beforeSequence, int limit) {
+        ChatRoom room = roomManager.getRoom(roomId);
+        return room != null ? room.getMessageHistoryBefore(beforeSequence, limit) : Collections.emptyList();
+    }
+
+    public void shutdown() {
+        roomManager.shutdown();
+    }
+}
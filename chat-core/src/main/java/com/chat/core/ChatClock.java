@@ -0,0 +1,36 @@
+package com.chat.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Coarse wall clock for message timestamps: a daemon ticker refreshes a volatile epoch-millis value, so
+// reading it is one volatile load instead of a clock call plus a LocalDateTime allocation and zone lookup.
+// The value never moves backwards, even if the system clock is set back; it then stands still until it
+// catches up. Resolution is chat.clock.tickMillis (default 1 ms).
+public final class ChatClock {
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.getLong("chat.clock.tickMillis", 1));
+    private static volatile long nowMillis = System.currentTimeMillis();
+
+    static {
+        Thread ticker = new Thread(ChatClock::tick, "chat-clock");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    private ChatClock() {
+    }
+
+    public static long currentTimeMillis() {
+        return nowMillis;
+    }
+
+    private static void tick() {
+        while (true) {
+            LockSupport.parkNanos(TICK_NANOS);
+            long now = System.currentTimeMillis();
+            if (now > nowMillis) {
+                nowMillis = now;
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.chat.core;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+// Message class to encapsulate chat messages
+public class ChatMessage {
+    private final String sender;
+    private final String content;
+    private final long timestamp; // epoch millis from ChatClock; converted only for display
+    private final boolean isPrivate;
+    private final String recipient;
+    private String roomId; // the room that numbered it; null for direct private messages
+    private long sequence; // assigned once by the room at ingest; 0 until then
+    private long roomIncarnation; // which incarnation of the room numbered it, as sequences restart in a new one
+
+    public ChatMessage(String sender, String content, boolean isPrivate, String recipient) {
+        this.sender = sender;
+        this.content = content;
+        this.timestamp = ChatClock.currentTimeMillis();
+        this.isPrivate = isPrivate;
+        this.recipient = recipient;
+    }
+
+    // Restores a message read back from storage, or from another node, with its original timestamp and sequence
+    public ChatMessage(String sender, String content, boolean isPrivate, String recipient, String roomId,
+                       long timestamp, long sequence) {
+        this(sender, content, isPrivate, recipient, roomId, timestamp, sequence, 0);
+    }
+
+    public ChatMessage(String sender, String content, boolean isPrivate, String recipient, String roomId,
+                       long timestamp, long sequence, long roomIncarnation) {
+        this.sender = sender;
+        this.content = content;
+        this.timestamp = timestamp;
+        this.isPrivate = isPrivate;
+        this.recipient = recipient;
+        this.roomId = roomId;
+        this.sequence = sequence;
+        this.roomIncarnation = roomIncarnation;
+    }
+
+    // Getters
+    public String getSender() { return sender; }
+    public String getContent() { return content; }
+    public long getTimestampMillis() { return timestamp; }
+    // Allocates a new LocalDateTime in the system zone on every call; keep it off the message path
+    public LocalDateTime getTimestamp() {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault());
+    }
+    public boolean isPrivate() { return isPrivate; }
+    public String getRecipient() { return recipient; }
+    public String getRoomId() { return roomId; }
+    public long getSequence() { return sequence; }
+    public long getRoomIncarnation() { return roomIncarnation; }
+
+    // Sequences are per room incarnation, so the room and its incarnation are stamped together with the number
+    void assignSequence(String roomId, long roomIncarnation, long sequence) {
+        if (this.sequence != 0) {
+            throw new IllegalStateException("Message already has sequence " + this.sequence);
+        }
+        this.roomId = roomId;
+        this.roomIncarnation = roomIncarnation;
+        this.sequence = sequence;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("[%s] %s%s: %s",
+                getTimestamp(),
+                sender,
+                isPrivate ? " (private to " + recipient + ")" : "",
+                content);
+    }
+}
@@ -0,0 +1,555 @@
+package com.chat.core;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// ChatRoom class implementing Subject
+public class ChatRoom implements Subject {
+    private static final Logger LOGGER = Logger.getLogger(ChatRoom.class.getName());
+    private static final FrameEncoder FRAMES = new FrameEncoder(1024, 4096);
+    private static final FrameEncoder BATCH_FRAMES = new FrameEncoder(16 * 1024, 256);
+    static final int DEFAULT_HISTORY_CAPACITY = 1000;
+    private static final User[] NO_MEMBERS = new User[0];
+    static final String SYSTEM_SENDER = "system";
+    // Clock-based and strictly rising, so a room created again under the same id, in this process or after a
+    // restart, gets a newer incarnation than the one its proxies last heard from
+    private static final AtomicLong LAST_INCARNATION = new AtomicLong();
+    // How long closing waits for sends already numbered, e.g. one stuck in a log append
+    private static final long DRAIN_TIMEOUT_NANOS =
+            TimeUnit.MILLISECONDS.toNanos(Long.getLong("chat.room.drainTimeoutMillis", 2000));
+    private final String roomId;
+    private final Map<String, User> users; // for private-message lookups by name
+    // Immutable copy of the members, replaced on every join and leave, so a broadcast is a plain array loop
+    private volatile User[] members = NO_MEMBERS;
+    private final Lock membershipLock = new ReentrantLock();
+    private final RingBuffer<ChatMessage> messages;
+    private final DeliveryMode deliveryMode;
+    private final Executor fanOutExecutor;
+    private final MessageLog messageLog; // null when the room is memory-only
+    private final MessageBus messageBus; // null unless this node owns the room in a cluster
+    private final BroadcastBatcher batcher; // BATCHED rooms only
+    private final RoomSequencer sequencer; // hands messages to notify in sequence order
+    private final TenantAdmission admission; // null when no tenant quota applies, e.g. on proxies
+    private volatile TokenBucket sendLimit; // checked by members before they send; null when off
+    private final DedupWindow replicated = new DedupWindow(1024); // proxies only: broadcasts already delivered
+    private final long incarnation = // stamped on every message with its sequence
+            LAST_INCARNATION.updateAndGet(last -> Math.max(last + 1, System.currentTimeMillis()));
+    private final Lock ingestLock = new ReentrantLock();
+    private volatile long lastActivityMillis = ChatClock.currentTimeMillis(); // last broadcast, join or leave
+    // Changes only under membershipLock, so a join and a close cannot interleave
+    private volatile RoomState state = RoomState.ACTIVE;
+    private final CompletableFuture<Void> closed = new CompletableFuture<>();
+    private boolean closeRequested; // guarded by membershipLock; set by close() even while the room is draining
+    private volatile Runnable closeListener; // runs after a close() releases the members, before closed completes
+
+    public ChatRoom(String roomId) {
+        this(roomId, DeliveryMode.SYNCHRONOUS, Runnable::run, DEFAULT_HISTORY_CAPACITY);
+    }
+
+    public ChatRoom(String roomId, DeliveryMode deliveryMode, Executor fanOutExecutor, int historyCapacity) {
+        this(roomId, deliveryMode, fanOutExecutor, historyCapacity, null);
+    }
+
+    public ChatRoom(String roomId, DeliveryMode deliveryMode, Executor fanOutExecutor, int historyCapacity,
+                    MessageLog messageLog) {
+        this(roomId, deliveryMode, fanOutExecutor, historyCapacity, messageLog, null);
+    }
+
+    // A room with a log resumes from it, with its most recent messages back in memory
+    public ChatRoom(String roomId, DeliveryMode deliveryMode, Executor fanOutExecutor, int historyCapacity,
+                    MessageLog messageLog, MessageBus messageBus) {
+        this(roomId, deliveryMode, fanOutExecutor, historyCapacity, messageLog, messageBus, null);
+    }
+
+    // Broadcasts count against the tenant's quota when admission is given
+    ChatRoom(String roomId, DeliveryMode deliveryMode, Executor fanOutExecutor, int historyCapacity,
+             MessageLog messageLog, MessageBus messageBus, TenantAdmission admission) {
+        this(roomId, deliveryMode, fanOutExecutor, historyCapacity, messageLog, messageBus, admission,
+                messageLog != null ? messageLog.lastSequence() : 0,
+                messageLog != null && messageLog.lastSequence() > 0
+                        ? messageLog.readBefore(messageLog.lastSequence() + 1, historyCapacity)
+                        : Collections.emptyList());
+    }
+
+    // Rehydrates a room evicted without a store: recent holds its last messages up to lastSequence
+    ChatRoom(String roomId, DeliveryMode deliveryMode, Executor fanOutExecutor, int historyCapacity,
+             MessageLog messageLog, MessageBus messageBus, TenantAdmission admission, long lastSequence,
+             List<ChatMessage> recent) {
+        this.roomId = roomId;
+        this.users = new ConcurrentHashMap<>();
+        this.messages = new RingBuffer<>(historyCapacity, lastSequence, recent);
+        this.sequencer = new RoomSequencer(RoomSequencer.DEFAULT_CAPACITY, lastSequence, this::notify);
+        this.deliveryMode = deliveryMode;
+        this.fanOutExecutor = fanOutExecutor;
+        this.messageLog = messageLog;
+        this.messageBus = messageBus;
+        this.admission = admission;
+        this.batcher = deliveryMode == DeliveryMode.BATCHED ? new BroadcastBatcher(fanOutExecutor, this::deliverBatch)
+                : null;
+    }
+
+    @Override
+    public void attach(Observer observer) {
+        User user = (User) observer;
+        membershipLock.lock();
+        try {
+            if (state != RoomState.ACTIVE) {
+                throw new IllegalStateException("Chat room " + roomId + " is " + state);
+            }
+            lastActivityMillis = ChatClock.currentTimeMillis();
+            User previous = users.put(user.getUsername(), user);
+            User[] current = members;
+            int index = previous != null ? indexOf(current, previous) : -1;
+            User[] updated;
+            if (index >= 0) {
+                updated = current.clone();
+                updated[index] = user;
+            } else {
+                updated = Arrays.copyOf(current, current.length + 1);
+                updated[current.length] = user;
+            }
+            members = updated;
+        } finally {
+            membershipLock.unlock();
+        }
+        LOGGER.info("User " + user.getUsername() + " joined room " + roomId);
+    }
+
+    @Override
+    public void detach(Observer observer) {
+        User user = (User) observer;
+        membershipLock.lock();
+        try {
+            lastActivityMillis = ChatClock.currentTimeMillis();
+            // By identity: a stale session leaving must not take out the one that replaced it under the same name
+            User[] current = members;
+            int index = users.remove(user.getUsername(), user) ? indexOf(current, user) : -1;
+            if (index >= 0) {
+                User[] updated = new User[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, index);
+                System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+                members = updated;
+            }
+        } finally {
+            membershipLock.unlock();
+        }
+        LOGGER.info("User " + user.getUsername() + " left room " + roomId);
+    }
+
+    private static int indexOf(User[] users, User user) {
+        for (int i = 0; i < users.length; i++) {
+            if (users[i] == user) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void notify(ChatMessage message) {
+        if (deliveryMode == DeliveryMode.BATCHED) {
+            batcher.offer(message);
+        } else if (deliveryMode == DeliveryMode.ASYNCHRONOUS) {
+            fanOutExecutor.execute(() -> {
+                try {
+                    deliver(message);
+                } finally {
+                    delivered(message);
+                }
+            });
+        } else {
+            try {
+                deliver(message);
+            } finally {
+                delivered(message);
+            }
+        }
+    }
+
+    // Frees the message's share of the tenant's pending bytes
+    private void delivered(ChatMessage message) {
+        if (admission != null) {
+            admission.delivered(message);
+        }
+    }
+
+    // Runs of consecutive broadcasts go out as one frame; a private message is delivered on its own, in order
+    private void deliverBatch(List<ChatMessage> batch) {
+        try {
+            int runStart = 0;
+            for (int i = 0; i < batch.size(); i++) {
+                if (batch.get(i).isPrivate()) {
+                    deliverRun(batch.subList(runStart, i));
+                    deliver(batch.get(i));
+                    runStart = i + 1;
+                }
+            }
+            deliverRun(batch.subList(runStart, batch.size()));
+        } finally {
+            if (admission != null) {
+                admission.delivered(batch);
+            }
+        }
+    }
+
+    private void deliverRun(List<ChatMessage> run) {
+        if (run.size() <= 1) {
+            if (!run.isEmpty()) {
+                deliver(run.get(0));
+            }
+            return;
+        }
+        EncodedFrame frame = BATCH_FRAMES.encode(run);
+        try {
+            for (User user : members) {
+                try {
+                    user.update(run, frame);
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Delivery to " + user.getUsername() + " failed in room " + roomId, e);
+                }
+            }
+            if (messageBus != null) {
+                messageBus.publish(frame);
+            }
+        } finally {
+            frame.release();
+        }
+    }
+
+    // Encodes once; each recipient's transport retains the shared frame, and the room drops its own reference last
+    private void deliver(ChatMessage message) {
+        if (message.isPrivate()) {
+            User recipient = users.get(message.getRecipient());
+            if (recipient != null) {
+                EncodedFrame frame = FRAMES.encode(message);
+                try {
+                    deliverTo(recipient, message, frame);
+                } finally {
+                    frame.release();
+                }
+            } else {
+                LOGGER.warning("Private message recipient not found: " + message.getRecipient());
+            }
+        } else {
+            EncodedFrame frame = FRAMES.encode(message);
+            try {
+                for (User user : members) {
+                    deliverTo(user, message, frame);
+                }
+                if (messageBus != null) {
+                    messageBus.publish(frame);
+                }
+            } finally {
+                frame.release();
+            }
+        }
+    }
+
+    // One failing observer must not stop delivery to the rest of the room
+    private void deliverTo(User user, ChatMessage message, EncodedFrame frame) {
+        try {
+            user.update(message, frame);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Delivery to " + user.getUsername() + " failed in room " + roomId, e);
+        }
+    }
+
+    public DeliveryMode getDeliveryMode() {
+        return deliveryMode;
+    }
+
+    // Concurrent senders may finish in any order, but every member receives the room's messages in sequence order.
+    // Throws IllegalStateException once the room is draining or closed, and QuotaExceededException when the
+    // tenant is over its quota.
+    public void broadcastMessage(ChatMessage message) {
+        long now = ChatClock.currentTimeMillis();
+        if (lastActivityMillis != now) {
+            lastActivityMillis = now; // at most one write per clock tick
+        }
+        long sequence;
+        if (admission == null) {
+            sequence = ingest(message);
+        } else {
+            admission.admit(message);
+            try {
+                sequence = ingest(message);
+            } catch (RuntimeException e) {
+                admission.cancelled(message);
+                throw e;
+            }
+        }
+        messages.publish(sequence, message);
+        sequencer.publish(sequence, message);
+        if (LOGGER.isLoggable(Level.INFO)) {
+            // Explicit source and parameters: no stack walk here, and the handler formats the message
+            LOGGER.logp(Level.INFO, ChatRoom.class.getName(), "broadcastMessage", "Message broadcast in room {0}: {1}",
+                    new Object[]{roomId, message});
+        }
+    }
+
+    // Numbers the message, and appends it to the log if the room has one. Once a sequence is claimed, any
+    // failure abandons it, since the sequencer would otherwise wait for it forever.
+    private long ingest(ChatMessage message) {
+        if (message.getSequence() != 0) {
+            // A message already broadcast; caught here so it never claims a sequence
+            throw new IllegalStateException("Message already has sequence " + message.getSequence() + " in room "
+                    + message.getRoomId());
+        }
+        if (messageLog == null) {
+            return claimAndAssign(message);
+        }
+        // The log is append-only in sequence order, so numbering and appending happen together
+        ingestLock.lock();
+        try {
+            long sequence = claimAndAssign(message);
+            try {
+                messageLog.append(message);
+            } catch (RuntimeException e) {
+                abandon(sequence);
+                throw e;
+            }
+            return sequence;
+        } finally {
+            ingestLock.unlock();
+        }
+    }
+
+    // assignSequence can still throw when the same message is broadcast from two threads at once
+    private long claimAndAssign(ChatMessage message) {
+        long sequence = claimWhileActive();
+        try {
+            message.assignSequence(roomId, incarnation, sequence);
+        } catch (RuntimeException e) {
+            abandon(sequence);
+            throw e;
+        }
+        return sequence;
+    }
+
+    // Proxy side of the message bus: hands local members a broadcast the owning node already numbered, once
+    // even if the bus delivers it again, and drops it if the owner has since recreated the room
+    public void deliverReplicated(ChatMessage message) {
+        if (replicated.firstSighting(message.getRoomIncarnation(), message.getSequence())) {
+            notify(message);
+        }
+    }
+
+    public List<String> getActiveUsers() {
+        User[] snapshot = members;
+        List<String> usernames = new ArrayList<>(snapshot.length);
+        for (User user : snapshot) {
+            usernames.add(user.getUsername());
+        }
+        return usernames;
+    }
+
+    public List<ChatMessage> getMessageHistory() {
+        return messages.snapshot();
+    }
+
+    // Messages a reconnecting client missed: up to limit messages after the last sequence it saw
+    public List<ChatMessage> getMessageHistory(long afterSequence, int limit) {
+        if (messageLog != null && afterSequence + 1 < messages.oldestSequence()) {
+            return messageLog.readAfter(afterSequence, limit);
+        }
+        return messages.readAfter(afterSequence, limit);
+    }
+
+    // Older page for scrolling back: up to limit messages preceding beforeSequence
+    public List<ChatMessage> getMessageHistoryBefore(long beforeSequence, int limit) {
+        if (messageLog != null && beforeSequence - limit < messages.oldestSequence()) {
+            return messageLog.readBefore(beforeSequence, limit);
+        }
+        return messages.readBefore(beforeSequence, limit);
+    }
+
+    // The state is read after the claim and close reads the last claimed sequence after setting it, so every
+    // sequence is either refused here or is one close waits for
+    private long claimWhileActive() {
+        long sequence = messages.claim();
+        if (state != RoomState.ACTIVE) {
+            abandon(sequence);
+            throw new IllegalStateException("Chat room " + roomId + " is " + state);
+        }
+        return sequence;
+    }
+
+    // A claimed sequence that will carry no message: history reads and delivery both step over it
+    private void abandon(long sequence) {
+        messages.skip(sequence);
+        sequencer.skip(sequence);
+    }
+
+    // Stops accepting joins and messages, lets messages already accepted reach the members, then sends every
+    // member a closing notice and releases them. The caller only waits for in-progress sends to be numbered;
+    // delivery and release run on the room's own executor, so other rooms carry on meanwhile. Completes once
+    // the room is CLOSED and its manager has forgotten it; calling it again returns the same future.
+    public CompletableFuture<Void> close() {
+        membershipLock.lock();
+        try {
+            closeRequested = true;
+            if (state != RoomState.ACTIVE) {
+                return closed; // already closing, or draining for eviction, which then finishes the close
+            }
+            state = RoomState.DRAINING;
+        } finally {
+            membershipLock.unlock();
+        }
+        LOGGER.info("Draining chat room " + roomId);
+        finishClose(awaitAcceptedMessages());
+        return closed;
+    }
+
+    private void finishClose(boolean drained) {
+        if (!drained) {
+            // A message accepted before the close still reaches the history, but the members are already gone
+            LOGGER.warning("Closing chat room " + roomId + " without waiting any longer for messages in progress");
+        }
+        if (deliveryMode == DeliveryMode.SYNCHRONOUS) {
+            releaseMembers();
+        } else {
+            // Queued behind every delivery of an accepted message
+            fanOutExecutor.execute(() -> {
+                if (batcher != null) {
+                    batcher.flushPending();
+                }
+                releaseMembers();
+            });
+        }
+    }
+
+    // For ChatRoomManager's reaper: closes the room straight away if it has no members and nothing happened in it
+    // after idleSinceMillis. Returns once accepted messages are in the history, so the room can be spilled, or
+    // false, leaving the room active, if a send in progress does not finish in time. A close() that arrives
+    // meanwhile takes over: the room is then closed for good instead of evicted, and false is returned.
+    boolean tryEvict(long idleSinceMillis) {
+        membershipLock.lock();
+        try {
+            if (state != RoomState.ACTIVE || members.length > 0 || lastActivityMillis > idleSinceMillis) {
+                return false;
+            }
+            state = RoomState.DRAINING;
+        } finally {
+            membershipLock.unlock();
+        }
+        boolean drained = awaitAcceptedMessages();
+        boolean closing;
+        membershipLock.lock();
+        try {
+            closing = closeRequested;
+            if (!closing) {
+                // Spilling now would lose a message in progress, so the room then stays for a later sweep. No
+                // member can have joined while it drained, so there is nobody to release.
+                state = drained ? RoomState.CLOSED : RoomState.ACTIVE;
+            }
+        } finally {
+            membershipLock.unlock();
+        }
+        if (closing) {
+            finishClose(drained);
+            return false;
+        }
+        if (drained) {
+            LOGGER.info("Closed idle chat room " + roomId);
+            closed.complete(null);
+        }
+        return drained;
+    }
+
+    // Only senders that claimed a sequence before the state changed are left, so this normally spins for
+    // microseconds; it backs off to parking after that, and gives up after DRAIN_TIMEOUT_NANOS
+    private boolean awaitAcceptedMessages() {
+        long lastAccepted = messages.lastSequence();
+        long deadline = System.nanoTime() + DRAIN_TIMEOUT_NANOS;
+        for (int spins = 0; !sequencer.hasDelivered(lastAccepted); spins++) {
+            if (System.nanoTime() - deadline > 0) {
+                return false;
+            }
+            if (spins < 100) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+            }
+        }
+        return true;
+    }
+
+    // Empties the member array in one step rather than detaching members one by one
+    private void releaseMembers() {
+        User[] released;
+        membershipLock.lock();
+        try {
+            released = members;
+            members = NO_MEMBERS;
+            users.clear();
+            state = RoomState.CLOSED;
+        } finally {
+            membershipLock.unlock();
+        }
+        if (released.length > 0) {
+            ChatMessage notice = new ChatMessage(SYSTEM_SENDER, "Room " + roomId + " was closed", false, null, roomId,
+                    ChatClock.currentTimeMillis(), 0);
+            EncodedFrame frame = FRAMES.encode(notice);
+            try {
+                for (User user : released) {
+                    try {
+                        user.roomClosed(this, notice, frame);
+                    } catch (RuntimeException e) {
+                        LOGGER.log(Level.WARNING, "Closing notice to " + user.getUsername() + " failed", e);
+                    }
+                }
+            } finally {
+                frame.release();
+            }
+        }
+        LOGGER.info("Closed chat room " + roomId + " and released " + released.length + " members");
+        Runnable listener = closeListener;
+        if (listener != null) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Close listener failed for chat room " + roomId, e);
+            }
+        }
+        closed.complete(null);
+    }
+
+    public RoomState getState() {
+        return state;
+    }
+
+    // Set by ChatRoomManager before the room is published, to forget the room once close() has released it
+    void setCloseListener(Runnable closeListener) {
+        this.closeListener = closeListener;
+    }
+
+    // Set by ChatRoomManager before the room is published
+    void setSendLimit(TokenBucket sendLimit) {
+        this.sendLimit = sendLimit;
+    }
+
+    TokenBucket getSendLimit() {
+        return sendLimit;
+    }
+
+    boolean hasMessageLog() {
+        return messageLog != null;
+    }
+
+    public long getLastSequence() {
+        return messages.lastSequence();
+    }
+
+    public String getRoomId() {
+        return roomId;
+    }
+}
@@ -0,0 +1,419 @@
+package com.chat.core;
+
+import java.util.*;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Singleton Pattern: ChatRoomManager. getInstance() is the process-wide default; isolated managers
+// (one per tenant or shard) are created directly, or through TenantRegistry, and handed to ChatApplication.
+// Each manager is one tenant: its own room namespace, quota and metrics.
+public class ChatRoomManager {
+    private static final Logger LOGGER = Logger.getLogger(ChatRoomManager.class.getName());
+    private final Lock lock = new ReentrantLock();
+    private static final MessageCodec HISTORY_CODEC = new MessageCodec();
+    private final Map<String, ChatRoom> rooms;
+    private final FanOutEngine fanOutEngine;
+    private final boolean ownsFanOutEngine; // false when TenantRegistry shares one between tenants
+    private final TenantAdmission admission;
+    private volatile SendThrottle sendThrottle; // null: sends are not rate limited
+    private volatile DeliveryMode deliveryMode = DeliveryMode.ASYNCHRONOUS;
+    private volatile int historyCapacity = ChatRoom.DEFAULT_HISTORY_CAPACITY;
+    private volatile MessageStore messageStore;
+    private volatile RoomPlacement roomPlacement; // null: every room is local
+    private volatile MessageBus messageBus;
+    private final UserDirectory userDirectory;
+    // Local rooms evicted while idle. Without a store the entry keeps the room's recent history, encoded;
+    // with one it only records that the room exists, since its log already holds everything.
+    private final Map<String, SpilledRoom> spilledRooms = new ConcurrentHashMap<>();
+    // Rooms being built, so concurrent callers for one id wait for a single room instead of building their own
+    private final Map<String, CompletableFuture<ChatRoom>> openingRooms = new ConcurrentHashMap<>();
+    private volatile ScheduledExecutorService reaper;
+
+    private static final class SpilledRoom {
+        final long lastSequence;
+        final byte[] history; // MessageCodec frames back to back; null when the room has a log
+
+        SpilledRoom(long lastSequence, byte[] history) {
+            this.lastSequence = lastSequence;
+            this.history = history;
+        }
+    }
+
+    // Initialization-on-demand holder: the JVM's class initialization publishes the instance safely,
+    // so getInstance() is a plain static read with no lock or volatile
+    private static final class Holder {
+        static final ChatRoomManager INSTANCE = new ChatRoomManager();
+    }
+
+    public ChatRoomManager() {
+        this("default", TenantQuota.UNLIMITED);
+    }
+
+    public ChatRoomManager(String tenantId, TenantQuota quota) {
+        this(tenantId, quota, new FanOutEngine(Runtime.getRuntime().availableProcessors()), true);
+    }
+
+    ChatRoomManager(String tenantId, TenantQuota quota, FanOutEngine fanOutEngine, boolean ownsFanOutEngine) {
+        this.rooms = new ConcurrentHashMap<>();
+        this.fanOutEngine = fanOutEngine;
+        this.ownsFanOutEngine = ownsFanOutEngine;
+        this.admission = new TenantAdmission(Objects.requireNonNull(tenantId, "tenantId"), quota);
+        this.userDirectory = new UserDirectory(UserDirectory.DEFAULT_MAILBOX_CAPACITY, admission);
+    }
+
+    public static ChatRoomManager getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    // The room is built outside the rooms map, so opening its log or checking the quota holds no map lock. Its
+    // spilled state is dropped only once the room is installed; if building fails, the next call tries again.
+    public ChatRoom createRoom(String roomId) {
+        ChatRoom room = rooms.get(roomId);
+        if (room != null) {
+            return room;
+        }
+        CompletableFuture<ChatRoom> opening = new CompletableFuture<>();
+        CompletableFuture<ChatRoom> other = openingRooms.putIfAbsent(roomId, opening);
+        if (other != null) {
+            try {
+                return other.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        try {
+            room = rooms.get(roomId); // installed just before this call claimed the id
+            if (room == null) {
+                SpilledRoom spilled = spilledRooms.get(roomId);
+                room = openRoom(roomId, spilled);
+                SendThrottle throttle = sendThrottle;
+                if (throttle != null) {
+                    room.setSendLimit(throttle.newRoomBucket());
+                }
+                ChatRoom installed = room;
+                room.setCloseListener(() -> forget(installed));
+                rooms.put(roomId, room);
+                if (spilled != null) {
+                    spilledRooms.remove(roomId, spilled);
+                }
+            }
+            opening.complete(room);
+            return room;
+        } catch (RuntimeException | Error e) {
+            opening.completeExceptionally(e);
+            throw e;
+        } finally {
+            openingRooms.remove(roomId, opening);
+        }
+    }
+
+    private ChatRoom openRoom(String id, SpilledRoom spilled) {
+        RoomPlacement placement = roomPlacement;
+        if (placement != null && !placement.isLocal(id)) {
+            LOGGER.info("Opened chat room " + id + " owned by another node");
+            return placement.openRemoteRoom(id, deliveryMode, fanOutEngine.newRoomExecutor());
+        }
+        admission.admitRoom(rooms.size()); // proxies are never refused; their owner enforces its own quota
+        MessageStore store = messageStore;
+        if (spilled != null && spilled.history != null) {
+            LOGGER.info("Rehydrated chat room: " + id);
+            return new ChatRoom(id, deliveryMode, fanOutEngine.newRoomExecutor(), historyCapacity, null,
+                    messageBus, admission, spilled.lastSequence, decodeHistory(spilled.history));
+        }
+        LOGGER.info((spilled != null ? "Rehydrated chat room: " : "Created new chat room: ") + id);
+        return new ChatRoom(id, deliveryMode, fanOutEngine.newRoomExecutor(), historyCapacity,
+                store != null ? store.openLog(id) : null, messageBus, admission);
+    }
+
+    // Rooms owned by another node always resolve, since their owner creates them on first use, and so do
+    // evicted rooms, which are rehydrated
+    public ChatRoom getRoom(String roomId) {
+        ChatRoom room = rooms.get(roomId);
+        if (room == null && (!isLocalRoom(roomId) || spilledRooms.containsKey(roomId))) {
+            return createRoom(roomId);
+        }
+        return room;
+    }
+
+    // Joins through the manager rather than User.joinRoom, so a room closed or evicted in between is replaced
+    // by a new or rehydrated one
+    public ChatRoom joinRoom(User user, String roomId) {
+        while (true) {
+            ChatRoom room = createRoom(roomId);
+            try {
+                user.joinRoom(room);
+                return room;
+            } catch (IllegalStateException e) {
+                if (room.getState() == RoomState.ACTIVE) {
+                    throw e;
+                }
+                awaitRemoval(room);
+            }
+        }
+    }
+
+    // Broadcast on behalf of a sender that is not a member, such as another node; retried like joinRoom
+    public void broadcast(String roomId, ChatMessage message) {
+        while (true) {
+            ChatRoom room = createRoom(roomId);
+            try {
+                room.broadcastMessage(message);
+                return;
+            } catch (IllegalStateException e) {
+                if (room.getState() == RoomState.ACTIVE) {
+                    throw e;
+                }
+                awaitRemoval(room);
+            }
+        }
+    }
+
+    // A closed room leaves the map before close() completes; an evicted one right after it is spilled
+    private void awaitRemoval(ChatRoom room) {
+        room.close().join(); // the room is already draining or closed, so this only waits
+        while (rooms.get(room.getRoomId()) == room) {
+            Thread.yield();
+        }
+    }
+
+    // Evicts rooms without members that have been idle for idleTtlMillis, checking every checkIntervalMillis
+    public void startRoomReaper(long idleTtlMillis, long checkIntervalMillis) {
+        lock.lock();
+        try {
+            if (reaper != null) {
+                throw new IllegalStateException("Room reaper already started");
+            }
+            reaper = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "chat-room-reaper");
+                thread.setDaemon(true);
+                return thread;
+            });
+            reaper.scheduleWithFixedDelay(() -> reapIdleRooms(idleTtlMillis), checkIntervalMillis,
+                    checkIntervalMillis, TimeUnit.MILLISECONDS);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Returns the number of rooms evicted
+    public int reapIdleRooms(long idleTtlMillis) {
+        long idleSince = ChatClock.currentTimeMillis() - idleTtlMillis;
+        int evicted = 0;
+        for (ChatRoom room : rooms.values()) {
+            try {
+                if (room.tryEvict(idleSince)) {
+                    evict(room);
+                    evicted++;
+                }
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Failed to evict chat room " + room.getRoomId(), e);
+            }
+        }
+        if (evicted > 0) {
+            LOGGER.info("Evicted " + evicted + " idle chat rooms; " + rooms.size() + " remain in memory");
+        }
+        return evicted;
+    }
+
+    // Spills before removing, so a lookup never finds neither the room nor its spilled state
+    private void evict(ChatRoom room) {
+        String roomId = room.getRoomId();
+        try {
+            spill(room);
+        } finally {
+            rooms.remove(roomId, room);
+        }
+    }
+
+    private void spill(ChatRoom room) {
+        String roomId = room.getRoomId();
+        if (isLocalRoom(roomId)) {
+            MessageStore store = messageStore;
+            if (room.hasMessageLog()) {
+                spilledRooms.put(roomId, new SpilledRoom(0, null)); // the log knows where to resume
+                if (store != null) {
+                    store.closeLog(roomId);
+                }
+            } else {
+                // Sequences refused while the room drained were never used, so numbering resumes after the
+                // last message actually in the history
+                List<ChatMessage> history = room.getMessageHistory();
+                if (!history.isEmpty()) {
+                    spilledRooms.put(roomId, new SpilledRoom(history.get(history.size() - 1).getSequence(),
+                            encodeHistory(history)));
+                }
+            }
+        }
+    }
+
+    private static byte[] encodeHistory(List<ChatMessage> history) {
+        int length = 0;
+        for (ChatMessage message : history) {
+            length += HISTORY_CODEC.encodedLength(message);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        for (ChatMessage message : history) {
+            HISTORY_CODEC.encode(message, buffer);
+        }
+        return buffer.array();
+    }
+
+    private static List<ChatMessage> decodeHistory(byte[] history) {
+        List<ChatMessage> messages = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.wrap(history);
+        while (buffer.hasRemaining()) {
+            messages.add(HISTORY_CODEC.decode(buffer));
+        }
+        return messages;
+    }
+
+    public boolean isLocalRoom(String roomId) {
+        RoomPlacement placement = roomPlacement;
+        return placement == null || placement.isLocal(roomId);
+    }
+
+    // Closes the room (see ChatRoom.close) and forgets it once closed, deleting its log. The id stays taken while
+    // the room drains; joinRoom and broadcast wait for that and then create a new, empty room under the same id.
+    public CompletableFuture<Void> removeRoom(String roomId) {
+        spilledRooms.remove(roomId);
+        ChatRoom room = rooms.get(roomId);
+        if (room == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return room.close();
+    }
+
+    // Called by the room once close() has released its members, however the close was started. The log goes
+    // first: while the closed room is still mapped, nobody can open a new log under its id.
+    private void forget(ChatRoom room) {
+        String roomId = room.getRoomId();
+        if (rooms.get(roomId) != room) {
+            return;
+        }
+        MessageStore store = messageStore;
+        if (store != null && room.hasMessageLog()) {
+            store.deleteLog(roomId);
+        }
+        rooms.remove(roomId, room);
+        LOGGER.info("Removed chat room: " + roomId);
+    }
+
+    // Makes the user reachable by private messages from any room, and hands over messages queued while offline
+    public void connectUser(User user) {
+        SendThrottle throttle = sendThrottle;
+        if (throttle != null) {
+            user.setSendThrottle(throttle);
+        }
+        userDirectory.connect(user);
+    }
+
+    public void disconnectUser(User user) {
+        userDirectory.disconnect(user);
+    }
+
+    public User getConnectedUser(String username) {
+        return userDirectory.find(username);
+    }
+
+    // Delivers to the recipient's session directly, or queues the message until they connect
+    public void routePrivateMessage(ChatMessage message) {
+        userDirectory.route(message);
+    }
+
+    // Applies to rooms created after the call; existing rooms keep their mode
+    public void setDeliveryMode(DeliveryMode deliveryMode) {
+        this.deliveryMode = deliveryMode;
+    }
+
+    // Number of recent messages each new room keeps in memory
+    public void setHistoryCapacity(int historyCapacity) {
+        if (historyCapacity <= 0) {
+            throw new IllegalArgumentException("History capacity must be positive: " + historyCapacity);
+        }
+        this.historyCapacity = historyCapacity;
+    }
+
+    // Sends beyond the limits are refused, or under DELAY held for up to maxDelayMillis first. Applies to users
+    // connected and rooms created after the call.
+    public void setSendRateLimits(SendRateLimits limits, RateLimitPolicy policy, long maxDelayMillis) {
+        if (maxDelayMillis < 0) {
+            throw new IllegalArgumentException("Maximum send delay must not be negative: " + maxDelayMillis);
+        }
+        SendThrottle throttle = new SendThrottle(limits, policy, maxDelayMillis, admission.getMetrics());
+        this.sendThrottle = throttle;
+        LOGGER.info("Tenant " + getTenantId() + " send rate limits set to " + throttle);
+    }
+
+    // Rooms created after the call persist their messages to the store and resume from it on restart
+    public void setMessageStore(MessageStore messageStore) {
+        this.messageStore = messageStore;
+    }
+
+    // Cluster mode; set before any room is created, since existing rooms keep their placement
+    public void setRoomPlacement(RoomPlacement roomPlacement) {
+        this.roomPlacement = roomPlacement;
+    }
+
+    // Rooms created after the call publish their broadcasts to the other nodes through the bus
+    public void setMessageBus(MessageBus messageBus) {
+        this.messageBus = messageBus;
+    }
+
+    // Bus side: a broadcast from the node that owns the room, for the members of the local proxy
+    public void receiveReplicated(ChatMessage message) {
+        ChatRoom room = rooms.get(message.getRoomId());
+        if (room != null && !isLocalRoom(room.getRoomId())) {
+            room.deliverReplicated(message);
+        }
+    }
+
+    public String getTenantId() {
+        return admission.getMetrics().getTenantId();
+    }
+
+    public TenantQuota getTenantQuota() {
+        return admission.getQuota();
+    }
+
+    // Takes effect for the next message and room; the rate starts over with a full burst
+    public void setTenantQuota(TenantQuota quota) {
+        admission.setQuota(Objects.requireNonNull(quota, "quota"));
+        LOGGER.info("Tenant " + getTenantId() + " quota set to " + quota);
+    }
+
+    public TenantMetrics getTenantMetrics() {
+        return admission.getMetrics();
+    }
+
+    public int getRoomCount() {
+        return rooms.size();
+    }
+
+    // Waits for queued deliveries to finish, then stops the fan-out workers, the message bus and the store.
+    // Workers shared through TenantRegistry stay up for the other tenants.
+    public void shutdown() {
+        if (reaper != null) {
+            reaper.shutdownNow();
+        }
+        if (ownsFanOutEngine) {
+            fanOutEngine.shutdown();
+        }
+        MessageBus bus = messageBus;
+        if (bus != null) {
+            bus.close();
+        }
+        MessageStore store = messageStore;
+        if (store != null) {
+            store.close();
+        }
+    }
+}
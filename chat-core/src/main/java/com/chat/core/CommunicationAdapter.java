@@ -0,0 +1,7 @@
+package com.chat.core;
+
+// Adapter Pattern: Communication Protocol Adapter
+public interface CommunicationAdapter {
+    void sendMessage(ChatMessage message);
+    ChatMessage receiveMessage();
+}
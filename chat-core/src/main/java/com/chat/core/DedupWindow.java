@@ -0,0 +1,63 @@
+package com.chat.core;
+
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Remembers which of the most recent sequences have been seen, so redelivered messages are dropped without
+// losing ones that arrive slightly out of order. Anything older than the window counts as already seen.
+// Sequences are keyed by the incarnation of the room that numbered them: a room removed and created again on
+// its owner numbers from 1 again, so a newer incarnation starts the window over and an older one is stale.
+final class DedupWindow {
+    private final long[] seen;
+    private final int mask;
+    private final Lock lock = new ReentrantLock();
+    private long incarnation;
+    private long highest;
+
+    DedupWindow(int size) {
+        if (size < 64 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("Window size must be a power of two of at least 64: " + size);
+        }
+        this.seen = new long[size / 64];
+        this.mask = size - 1;
+    }
+
+    boolean firstSighting(long incarnation, long sequence) {
+        lock.lock();
+        try {
+            if (incarnation != this.incarnation) {
+                if (incarnation < this.incarnation) {
+                    return false;
+                }
+                this.incarnation = incarnation;
+                highest = 0;
+                Arrays.fill(seen, 0);
+            }
+            if (sequence > highest) {
+                // Slots between the old and the new highest now stand for sequences not seen yet
+                for (long cleared = Math.max(highest + 1, sequence - mask); cleared < sequence; cleared++) {
+                    clear(cleared);
+                }
+                highest = sequence;
+                clear(sequence);
+            } else if (sequence <= highest - (mask + 1)) {
+                return false;
+            }
+            int slot = (int) (sequence & mask);
+            long bit = 1L << (slot & 63);
+            if ((seen[slot >>> 6] & bit) != 0) {
+                return false;
+            }
+            seen[slot >>> 6] |= bit;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void clear(long sequence) {
+        int slot = (int) (sequence & mask);
+        seen[slot >>> 6] &= ~(1L << (slot & 63));
+    }
+}
@@ -0,0 +1,8 @@
+package com.chat.core;
+
+// How a room fans a message out to its members
+public enum DeliveryMode {
+    SYNCHRONOUS,  // deliver on the sender's thread (deterministic, useful for tests)
+    ASYNCHRONOUS, // hand delivery to the room's executor so the sender returns immediately
+    BATCHED       // like ASYNCHRONOUS, but bursts are coalesced into one frame per recipient (BroadcastBatcher)
+}
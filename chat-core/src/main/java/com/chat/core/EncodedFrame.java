@@ -0,0 +1,53 @@
+package com.chat.core;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Immutable, reference-counted encoding of one message shared by every recipient of a broadcast.
+// The buffer returns to its encoder's pool when the last holder releases it.
+public class EncodedFrame {
+    private final ByteBuffer buffer; // flipped once after encoding and never modified again
+    private final FrameEncoder owner;
+    private final AtomicInteger refCount = new AtomicInteger(1);
+
+    EncodedFrame(ByteBuffer buffer, FrameEncoder owner) {
+        this.buffer = buffer;
+        this.owner = owner;
+    }
+
+    public EncodedFrame retain() {
+        int count;
+        do {
+            count = refCount.get();
+            if (count <= 0) {
+                throw new IllegalStateException("Frame already released");
+            }
+        } while (!refCount.compareAndSet(count, count + 1));
+        return this;
+    }
+
+    public void release() {
+        int count = refCount.decrementAndGet();
+        if (count == 0) {
+            owner.recycle(buffer);
+        } else if (count < 0) {
+            throw new IllegalStateException("Frame released more times than retained");
+        }
+    }
+
+    public int length() {
+        return buffer.limit();
+    }
+
+    // Appends the frame bytes to target without touching the shared buffer's position
+    public void copyTo(ByteBuffer target) {
+        int length = buffer.limit();
+        target.put(target.position(), buffer, 0, length);
+        target.position(target.position() + length);
+    }
+
+    // Independent read-only cursor, for transports that write the frame in several steps
+    public ByteBuffer view() {
+        return buffer.asReadOnlyBuffer();
+    }
+}
@@ -0,0 +1,41 @@
+package com.chat.core;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+// Shared bounded worker pool that backs every room's fan-out executor
+public class FanOutEngine {
+    private static final Logger LOGGER = Logger.getLogger(FanOutEngine.class.getName());
+    private final ExecutorService workers;
+
+    public FanOutEngine(int workerThreads) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(workerThreads, task -> {
+            Thread thread = new Thread(task, "chat-fanout-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Each room gets its own serial executor, so every recipient sees the room's messages in broadcast order
+    public Executor newRoomExecutor() {
+        return new SerialExecutor(workers);
+    }
+
+    public void shutdown() {
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(5, TimeUnit.SECONDS)) {
+                LOGGER.warning("Fan-out workers did not finish pending deliveries in time");
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.chat.core;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Encodes messages into pooled direct buffers so a broadcast serializes once however many members it reaches
+public class FrameEncoder {
+    private final MessageCodec codec = new MessageCodec();
+    private final int pooledFrameBytes;
+    private final int maxPooledFrames;
+    private final Queue<ByteBuffer> pool = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    public FrameEncoder(int pooledFrameBytes, int maxPooledFrames) {
+        this.pooledFrameBytes = pooledFrameBytes;
+        this.maxPooledFrames = maxPooledFrames;
+    }
+
+    public EncodedFrame encode(ChatMessage message) {
+        int length = codec.encodedLength(message);
+        ByteBuffer buffer = length <= pooledFrameBytes ? acquire() : ByteBuffer.allocateDirect(length);
+        codec.encode(message, buffer);
+        buffer.flip();
+        return new EncodedFrame(buffer, this);
+    }
+
+    // Several messages back to back in one frame; the codec is self-delimiting, so readers decode until the end
+    public EncodedFrame encode(List<ChatMessage> messages) {
+        int length = 0;
+        for (ChatMessage message : messages) {
+            length += codec.encodedLength(message);
+        }
+        ByteBuffer buffer = length <= pooledFrameBytes ? acquire() : ByteBuffer.allocateDirect(length);
+        for (ChatMessage message : messages) {
+            codec.encode(message, buffer);
+        }
+        buffer.flip();
+        return new EncodedFrame(buffer, this);
+    }
+
+    private ByteBuffer acquire() {
+        ByteBuffer buffer = pool.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(pooledFrameBytes);
+        }
+        pooled.decrementAndGet();
+        return buffer;
+    }
+
+    // Oversized one-off buffers are left to the GC
+    void recycle(ByteBuffer buffer) {
+        if (buffer.capacity() == pooledFrameBytes && pooled.incrementAndGet() <= maxPooledFrames) {
+            buffer.clear();
+            pool.offer(buffer);
+        } else if (buffer.capacity() == pooledFrameBytes) {
+            pooled.decrementAndGet();
+        }
+    }
+}
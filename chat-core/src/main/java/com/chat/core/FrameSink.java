@@ -0,0 +1,11 @@
+package com.chat.core;
+
+// Transport side of a connected user. Frames wait in the user's OutboundQueue; the transport polls them,
+// writes them and releases each one afterwards.
+public interface FrameSink {
+    // Called from fan-out threads whenever the queue goes from idle to having work; must not block
+    void framesAvailable();
+
+    // The user was evicted as a slow consumer; drop the connection without blocking
+    void disconnect();
+}
@@ -0,0 +1,61 @@
+package com.chat.core;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Message bus between nodes that share a JVM, one ChatRoomManager each, e.g. for testing a cluster in one
+// process. Frames are decoded again on the receiving side, as they would be after crossing the wire.
+public class InProcessMessageBus extends BatchingMessageBus {
+    private static final MessageCodec CODEC = new MessageCodec();
+    private final Hub hub;
+    private final String nodeId;
+
+    // The nodes that see each other's broadcasts
+    public static final class Hub {
+        private final Map<String, ChatRoomManager> nodes = new ConcurrentHashMap<>();
+
+        // Connects the manager to the hub and returns the bus it publishes to
+        public InProcessMessageBus join(String nodeId, ChatRoomManager roomManager, int maxQueued) {
+            if (nodes.putIfAbsent(nodeId, roomManager) != null) {
+                throw new IllegalArgumentException("Node " + nodeId + " already joined the hub");
+            }
+            InProcessMessageBus bus = new InProcessMessageBus(this, nodeId, maxQueued);
+            roomManager.setMessageBus(bus);
+            return bus;
+        }
+    }
+
+    private InProcessMessageBus(Hub hub, String nodeId, int maxQueued) {
+        super(maxQueued);
+        this.hub = hub;
+        this.nodeId = nodeId;
+    }
+
+    @Override
+    protected Collection<String> destinations() {
+        List<String> destinations = new ArrayList<>(hub.nodes.keySet());
+        destinations.remove(nodeId);
+        return destinations;
+    }
+
+    @Override
+    protected void sendBatch(String destination, List<EncodedFrame> frames) {
+        ChatRoomManager target = hub.nodes.get(destination);
+        if (target == null) {
+            return;
+        }
+        for (EncodedFrame frame : frames) {
+            ByteBuffer messages = frame.view();
+            while (messages.hasRemaining()) {
+                target.receiveReplicated(CODEC.decode(messages));
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        hub.nodes.remove(nodeId);
+    }
+}
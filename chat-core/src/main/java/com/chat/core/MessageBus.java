@@ -0,0 +1,11 @@
+package com.chat.core;
+
+// Carries each room's numbered broadcasts from the node that owns the room to the other nodes, whose local
+// members of the room receive them through the room's proxy (ChatRoomManager.receiveReplicated)
+public interface MessageBus {
+    // Called by the owning room after local delivery, in sequence order. The frame is the one local members
+    // got, holding one message or a batch of them back to back; the bus retains it for as long as it needs it.
+    void publish(EncodedFrame frame);
+
+    void close();
+}
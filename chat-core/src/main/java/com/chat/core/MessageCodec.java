@@ -0,0 +1,263 @@
+package com.chat.core;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Compact versioned binary wire format for ChatMessage:
+//   [version][varint sequence][varint epoch millis][flags][sender][recipient if flagged][room if flagged]
+//   [varint room incarnation if flagged][content]
+// where strings are a varint UTF-8 length followed by the bytes. Encoding writes straight into the caller's
+// buffer and decoding reuses interned sender/recipient/room ids, so neither allocates beyond the decoded message.
+// Version 2 added the room incarnation; version 1 frames, e.g. in logs written before it, still decode. A frame
+// with a flag its version does not define is refused rather than misread.
+public class MessageCodec {
+    static final byte VERSION = 2;
+    private static final int FLAG_PRIVATE = 1;
+    private static final int FLAG_RECIPIENT = 1 << 1;
+    private static final int FLAG_ROOM = 1 << 2;
+    private static final int FLAG_INCARNATION = 1 << 3;
+    private static final int VERSION_1_FLAGS = FLAG_PRIVATE | FLAG_RECIPIENT | FLAG_ROOM;
+    private static final int VERSION_2_FLAGS = VERSION_1_FLAGS | FLAG_INCARNATION;
+    private static final int MAX_INTERNED_BYTES = 64;
+    private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[256]);
+    private final IdInterner ids = new IdInterner(1024);
+
+    public int encodedLength(ChatMessage message) {
+        int length = 2 + varintLength(message.getSequence()) + varintLength(message.getTimestampMillis())
+                + stringLength(message.getSender()) + stringLength(message.getContent());
+        if (message.getRecipient() != null) {
+            length += stringLength(message.getRecipient());
+        }
+        if (message.getRoomIncarnation() != 0) {
+            length += varintLength(message.getRoomIncarnation());
+        }
+        return message.getRoomId() != null ? length + stringLength(message.getRoomId()) : length;
+    }
+
+    // Throws BufferOverflowException if out has fewer than encodedLength(message) bytes remaining
+    public void encode(ChatMessage message, ByteBuffer out) {
+        int flags = (message.isPrivate() ? FLAG_PRIVATE : 0) | (message.getRecipient() != null ? FLAG_RECIPIENT : 0)
+                | (message.getRoomId() != null ? FLAG_ROOM : 0)
+                | (message.getRoomIncarnation() != 0 ? FLAG_INCARNATION : 0);
+        out.put(VERSION);
+        putVarint(out, message.getSequence());
+        putVarint(out, message.getTimestampMillis());
+        out.put((byte) flags);
+        putString(out, message.getSender());
+        if (message.getRecipient() != null) {
+            putString(out, message.getRecipient());
+        }
+        if (message.getRoomId() != null) {
+            putString(out, message.getRoomId());
+        }
+        if (message.getRoomIncarnation() != 0) {
+            putVarint(out, message.getRoomIncarnation());
+        }
+        putString(out, message.getContent());
+    }
+
+    public ChatMessage decode(ByteBuffer in) {
+        byte version = in.get();
+        if (version != VERSION && version != 1) {
+            throw new IllegalArgumentException("Unsupported message codec version: " + version);
+        }
+        long sequence = getVarint(in);
+        long epochMillis = getVarint(in);
+        int flags = in.get();
+        if ((flags & ~(version == 1 ? VERSION_1_FLAGS : VERSION_2_FLAGS)) != 0) {
+            throw new IllegalArgumentException("Unknown message flags " + Integer.toBinaryString(flags & 0xFF)
+                    + " in codec version " + version);
+        }
+        String sender = getId(in);
+        String recipient = (flags & FLAG_RECIPIENT) != 0 ? getId(in) : null;
+        String roomId = (flags & FLAG_ROOM) != 0 ? getId(in) : null;
+        long roomIncarnation = (flags & FLAG_INCARNATION) != 0 ? getVarint(in) : 0;
+        String content = getString(in);
+        return new ChatMessage(sender, content, (flags & FLAG_PRIVATE) != 0, recipient, roomId, epochMillis,
+                sequence, roomIncarnation);
+    }
+
+    // Reads the sequence of the frame starting at position without decoding the rest
+    public static long peekSequence(ByteBuffer in, int position) {
+        long value = 0;
+        int shift = 0;
+        for (int index = position + 1; ; index++) {
+            byte b = in.get(index);
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+            shift += 7;
+        }
+    }
+
+    private static int varintLength(long value) {
+        int length = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+    private static void putVarint(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static long getVarint(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    private static int stringLength(String value) {
+        int bytes = utf8Length(value);
+        return varintLength(bytes) + bytes;
+    }
+
+    // Unpaired surrogates are written as '?', matching String.getBytes(UTF_8)
+    private static int utf8Length(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    length += 4;
+                    i++;
+                } else {
+                    length += 1;
+                }
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static void putString(ByteBuffer out, String value) {
+        putVarint(out, utf8Length(value));
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                out.put((byte) c);
+            } else if (c < 0x800) {
+                out.put((byte) (0xC0 | (c >> 6)));
+                out.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    out.put((byte) (0xF0 | (codePoint >> 18)));
+                    out.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                    out.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                    out.put((byte) (0x80 | (codePoint & 0x3F)));
+                } else {
+                    out.put((byte) '?');
+                }
+            } else {
+                out.put((byte) (0xE0 | (c >> 12)));
+                out.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                out.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    // A string's length comes off the wire, so it is checked against the bytes actually left before anything is
+    // sized from it; a corrupt or hostile frame must not be able to ask for a huge allocation
+    private static int getLength(ByteBuffer in) {
+        long length = getVarint(in);
+        if (length < 0 || length > in.remaining()) {
+            throw new IllegalArgumentException("String length " + length + " exceeds the " + in.remaining()
+                    + " bytes left in the frame");
+        }
+        return (int) length;
+    }
+
+    private static String getString(ByteBuffer in) {
+        return getString(in, getLength(in));
+    }
+
+    private static String getString(ByteBuffer in, int length) {
+        byte[] scratch = SCRATCH.get();
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+            SCRATCH.set(scratch);
+        }
+        in.get(scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private String getId(ByteBuffer in) {
+        int length = getLength(in);
+        if (length > MAX_INTERNED_BYTES) {
+            return getString(in, length);
+        }
+        String id = ids.intern(in, in.position(), length);
+        in.position(in.position() + length);
+        return id;
+    }
+
+    // Fixed-size table of recently seen ids keyed by their UTF-8 bytes. Races only cost a cache miss,
+    // since entries are immutable and replaced whole.
+    private static final class IdInterner {
+        private final Entry[] table;
+
+        private static final class Entry {
+            final byte[] bytes;
+            final String value;
+
+            Entry(byte[] bytes, String value) {
+                this.bytes = bytes;
+                this.value = value;
+            }
+        }
+
+        IdInterner(int size) {
+            this.table = new Entry[Integer.highestOneBit(size)];
+        }
+
+        String intern(ByteBuffer in, int position, int length) {
+            int hash = 0x811C9DC5;
+            for (int i = 0; i < length; i++) {
+                hash = (hash ^ in.get(position + i)) * 0x01000193;
+            }
+            int slot = hash & (table.length - 1);
+            Entry entry = table[slot];
+            if (entry != null && matches(entry.bytes, in, position, length)) {
+                return entry.value;
+            }
+            byte[] bytes = new byte[length];
+            in.get(position, bytes);
+            entry = new Entry(bytes, new String(bytes, StandardCharsets.UTF_8));
+            table[slot] = entry;
+            return entry.value;
+        }
+
+        private static boolean matches(byte[] bytes, ByteBuffer in, int position, int length) {
+            if (bytes.length != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (bytes[i] != in.get(position + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
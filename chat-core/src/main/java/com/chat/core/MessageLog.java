@@ -0,0 +1,21 @@
+package com.chat.core;
+
+import java.util.*;
+
+// Durable, sequence-ordered history of one room
+public interface MessageLog {
+    // Messages must already carry their room sequence, and arrive in sequence order
+    void append(ChatMessage message);
+
+    // Up to limit messages with a sequence greater than afterSequence, oldest first
+    List<ChatMessage> readAfter(long afterSequence, int limit);
+
+    // The newest limit messages with a sequence less than beforeSequence, oldest first
+    List<ChatMessage> readBefore(long beforeSequence, int limit);
+
+    long lastSequence();
+
+    void flush();
+
+    void close();
+}
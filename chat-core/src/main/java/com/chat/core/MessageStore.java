@@ -0,0 +1,15 @@
+package com.chat.core;
+
+// Opens the message log of each room; a room resumes numbering from its log's last sequence
+public interface MessageStore {
+    MessageLog openLog(String roomId);
+
+    // Releases the room's log, e.g. when the room is evicted while idle; the next openLog reopens it
+    void closeLog(String roomId);
+
+    // Closes the room's log and deletes what it holds, when the room itself is removed; the next openLog
+    // starts an empty log
+    void deleteLog(String roomId);
+
+    void close();
+}
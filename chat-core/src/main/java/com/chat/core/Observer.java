@@ -0,0 +1,20 @@
+package com.chat.core;
+
+import java.util.*;
+
+// Observer Pattern: Observer interface
+public interface Observer {
+    void update(ChatMessage message);
+
+    // Broadcast path: the room encodes each message once and hands every observer the same frame
+    default void update(ChatMessage message, EncodedFrame frame) {
+        update(message);
+    }
+
+    // Batched broadcast: consecutive messages of one room, encoded back to back into a single frame
+    default void update(List<ChatMessage> messages, EncodedFrame frame) {
+        for (ChatMessage message : messages) {
+            update(message);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.chat.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Bounded per-recipient queue of encoded frames between the room fan-out and the user's transport.
+// Offers never block the broadcaster; a consumer that overflows under DISCONNECT, or that has had frames
+// waiting without taking any for longer than maxLagMillis, is reported back so the caller can evict it.
+public class OutboundQueue {
+    private final EncodedFrame[] frames;
+    private final OverflowPolicy overflowPolicy;
+    private final long maxLagNanos;
+    private final Lock lock = new ReentrantLock();
+    private int head;
+    private int size;
+    private long waitingSince; // when the consumer last made progress on a non-empty queue
+    private int peakDepth;
+    private long enqueued;
+    private long dropped;
+
+    public OutboundQueue(int capacity, OverflowPolicy overflowPolicy, long maxLagMillis) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Outbound queue capacity must be positive: " + capacity);
+        }
+        this.frames = new EncodedFrame[capacity];
+        this.overflowPolicy = overflowPolicy;
+        this.maxLagNanos = TimeUnit.MILLISECONDS.toNanos(maxLagMillis);
+    }
+
+    // Takes its own reference to the frame. False means the consumer is too far behind and should be evicted.
+    public boolean offer(EncodedFrame frame) {
+        long now = System.nanoTime();
+        lock.lock();
+        try {
+            if (size > 0 && now - waitingSince > maxLagNanos) {
+                return false;
+            }
+            if (size == frames.length) {
+                dropped++;
+                if (overflowPolicy == OverflowPolicy.DISCONNECT) {
+                    return false;
+                }
+                if (overflowPolicy == OverflowPolicy.DROP_NEWEST) {
+                    return true;
+                }
+                frames[head].release();
+                frames[head] = null;
+                head = (head + 1) % frames.length;
+                size--;
+            }
+            if (size == 0) {
+                waitingSince = now;
+            }
+            frames[(head + size) % frames.length] = frame.retain();
+            size++;
+            enqueued++;
+            peakDepth = Math.max(peakDepth, size);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // The caller owns the returned reference and must release it once written
+    public EncodedFrame poll() {
+        lock.lock();
+        try {
+            if (size == 0) {
+                return null;
+            }
+            EncodedFrame frame = frames[head];
+            frames[head] = null;
+            head = (head + 1) % frames.length;
+            size--;
+            waitingSince = System.nanoTime();
+            return frame;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void clear() {
+        EncodedFrame frame;
+        while ((frame = poll()) != null) {
+            frame.release();
+        }
+    }
+
+    public int capacity() {
+        return frames.length;
+    }
+
+    public int depth() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int peakDepth() {
+        lock.lock();
+        try {
+            return peakDepth;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long enqueuedCount() {
+        lock.lock();
+        try {
+            return enqueued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long droppedCount() {
+        lock.lock();
+        try {
+            return dropped;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.chat.core;
+
+// What a full outbound queue does with one more frame
+public enum OverflowPolicy {
+    DROP_OLDEST, // keep the freshest messages; the client sees a gap
+    DROP_NEWEST, // keep what is queued; the new message is skipped for this client
+    DISCONNECT   // evict the consumer
+}
@@ -0,0 +1,11 @@
+package com.chat.core;
+
+// A tenant went over one of its limits (see TenantQuota). An IllegalStateException, so callers that already
+// treat a refused send as non-fatal keep doing so.
+public class QuotaExceededException extends IllegalStateException {
+    private static final long serialVersionUID = 1L;
+
+    public QuotaExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package com.chat.core;
+
+// What a send over its rate limit does
+public enum RateLimitPolicy {
+    REJECT, // refuse the message straight away
+    DELAY   // hold the sender until a token is due, up to the configured maximum delay; refuse beyond that
+}
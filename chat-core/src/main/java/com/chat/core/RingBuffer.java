@@ -0,0 +1,141 @@
+package com.chat.core;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Fixed-capacity ring buffer keeping the last N entries. Writers claim a sequence with a single atomic
+// increment and publish with a CAS; readers see each slot through one volatile read, so neither side locks.
+class RingBuffer<T> {
+    private final int capacity;
+    private final AtomicReferenceArray<Slot<T>> slots;
+    private final long firstSequence;
+    private final AtomicLong lastClaimed;
+
+    private static final class Slot<T> {
+        final long sequence;
+        final T value; // null for a skipped sequence
+
+        Slot(long sequence, T value) {
+            this.sequence = sequence;
+            this.value = value;
+        }
+    }
+
+    public RingBuffer(int capacity) {
+        this(capacity, 0);
+    }
+
+    // Starts numbering after lastSequence, e.g. when resuming a room whose earlier entries live in storage
+    public RingBuffer(int capacity, long lastSequence) {
+        this(capacity, lastSequence, Collections.emptyList());
+    }
+
+    // Also preloads recent, the entries numbered up to and including lastSequence, oldest first
+    public RingBuffer(int capacity, long lastSequence, List<T> recent) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Ring buffer capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.firstSequence = lastSequence - recent.size() + 1;
+        this.lastClaimed = new AtomicLong(lastSequence);
+        long sequence = firstSequence;
+        for (T value : recent) {
+            slots.set(indexOf(sequence), new Slot<>(sequence, value));
+            sequence++;
+        }
+    }
+
+    // Returns the sequence (starting at 1) assigned to the entry
+    public long add(T value) {
+        long sequence = claim();
+        publish(sequence, value);
+        return sequence;
+    }
+
+    // Reserves the next sequence so the caller can stamp it on the entry before publishing
+    public long claim() {
+        return lastClaimed.incrementAndGet();
+    }
+
+    // For a claimed sequence that will never get an entry, so readers step over it instead of stopping there
+    public void skip(long sequence) {
+        publish(sequence, null);
+    }
+
+    // value must not be null; null marks a skipped sequence
+    public void publish(long sequence, T value) {
+        int index = indexOf(sequence);
+        Slot<T> slot = new Slot<>(sequence, value);
+        while (true) {
+            Slot<T> current = slots.get(index);
+            if (current != null && current.sequence > sequence) {
+                // A writer a full lap ahead already took the slot, so this entry has aged out of the window
+                return;
+            }
+            if (slots.compareAndSet(index, current, slot)) {
+                return;
+            }
+        }
+    }
+
+    // Oldest-to-newest copy of the retained entries, stopping at the first write still in flight
+    public List<T> snapshot() {
+        long last = lastClaimed.get();
+        return collect(oldestRetained(last), last);
+    }
+
+    // Up to limit entries with a sequence greater than afterSequence, oldest first
+    public List<T> readAfter(long afterSequence, int limit) {
+        long last = lastClaimed.get();
+        long first = Math.max(afterSequence + 1, oldestRetained(last));
+        return collect(first, Math.min(last, first + limit - 1));
+    }
+
+    // The newest limit entries with a sequence less than beforeSequence, oldest first
+    public List<T> readBefore(long beforeSequence, int limit) {
+        long newest = lastClaimed.get();
+        long last = Math.min(newest, beforeSequence - 1);
+        return collect(Math.max(last - limit + 1, oldestRetained(newest)), last);
+    }
+
+    public long lastSequence() {
+        return lastClaimed.get();
+    }
+
+    public long oldestSequence() {
+        return oldestRetained(lastClaimed.get());
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    private long oldestRetained(long last) {
+        return Math.max(firstSequence, last - capacity + 1);
+    }
+
+    private List<T> collect(long first, long last) {
+        if (last < first) {
+            return new ArrayList<>(0);
+        }
+        List<T> result = new ArrayList<>((int) (last - first + 1));
+        for (long sequence = first; sequence <= last; sequence++) {
+            Slot<T> slot = slots.get(indexOf(sequence));
+            if (slot != null && slot.sequence == sequence) {
+                if (slot.value != null) {
+                    result.add(slot.value);
+                }
+            } else if (slot == null || slot.sequence < sequence) {
+                break;
+            }
+            // otherwise already overwritten by a newer lap
+        }
+        return result;
+    }
+
+    private int indexOf(long sequence) {
+        return (int) (sequence % capacity);
+    }
+}
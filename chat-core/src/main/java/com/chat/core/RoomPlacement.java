@@ -0,0 +1,11 @@
+package com.chat.core;
+
+import java.util.concurrent.Executor;
+
+// Cluster mode: decides which node owns each room. A room owned by another node is represented locally by a
+// proxy from openRemoteRoom, which local users join and which forwards sends and history reads to the owner.
+public interface RoomPlacement {
+    boolean isLocal(String roomId);
+
+    ChatRoom openRemoteRoom(String roomId, DeliveryMode deliveryMode, Executor fanOutExecutor);
+}
@@ -0,0 +1,71 @@
+package com.chat.core;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+// Puts a room's messages back into sequence order between ingest and fan-out. Senders claim sequences
+// concurrently but can publish them in any order; each publishes into its slot and then tries to become the
+// drainer, which hands messages to the room strictly in sequence order until it reaches a gap. There is no
+// lock: a sender that loses the race leaves its message for the current drainer, which re-checks before leaving.
+class RoomSequencer {
+    static final int DEFAULT_CAPACITY = 256; // well above any realistic number of concurrent senders per room
+    private static final ChatMessage SKIPPED = new ChatMessage("", "", false, null); // claimed, never published
+    private final AtomicReferenceArray<ChatMessage> slots;
+    private final int mask;
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final Consumer<ChatMessage> consumer;
+    private volatile long next; // next sequence to hand to the consumer; written only by the drainer
+
+    RoomSequencer(int capacity, long lastSequence, Consumer<ChatMessage> consumer) {
+        if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a positive power of two: " + capacity);
+        }
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+        this.next = lastSequence + 1;
+        this.consumer = consumer;
+    }
+
+    // Returns once the message is delivered or left to the sender currently draining
+    void publish(long sequence, ChatMessage message) {
+        // Senders more than a window ahead of delivery wait for it, which also bounds the reorder buffer
+        while (sequence - next >= slots.length()) {
+            Thread.yield();
+        }
+        slots.set((int) sequence & mask, message);
+        drain();
+    }
+
+    // For a claimed sequence whose message will never be published, so delivery does not stall behind it
+    void skip(long sequence) {
+        publish(sequence, SKIPPED);
+    }
+
+    // True once every message up to sequence has been handed over and no handover is in progress
+    boolean hasDelivered(long sequence) {
+        return next > sequence && !draining.get();
+    }
+
+    private void drain() {
+        while (draining.compareAndSet(false, true)) {
+            try {
+                long sequence = next;
+                ChatMessage message;
+                while ((message = slots.get((int) sequence & mask)) != null) {
+                    slots.set((int) sequence & mask, null);
+                    next = ++sequence;
+                    if (message != SKIPPED) {
+                        consumer.accept(message);
+                    }
+                }
+            } finally {
+                draining.set(false);
+            }
+            // A message published after the last check but before the release is ours to deliver
+            if (slots.get((int) next & mask) == null) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.chat.core;
+
+// Lifecycle of a ChatRoom; it only moves forward
+public enum RoomState {
+    ACTIVE,   // accepts joins and messages
+    DRAINING, // refuses joins and new messages while the ones already accepted are delivered
+    CLOSED    // members have been told and released; the manager no longer hands the room out
+}
@@ -0,0 +1,46 @@
+package com.chat.core;
+
+// Token-bucket limits on sends: per user, per room, and across every sender of one ChatRoomManager. Each is
+// a rate in messages per second and a burst in messages; a rate of zero leaves that limit off.
+public final class SendRateLimits {
+    public static final SendRateLimits UNLIMITED = new SendRateLimits(0, 0, 0, 0, 0, 0);
+    private final int userPerSecond;
+    private final int userBurst;
+    private final int roomPerSecond;
+    private final int roomBurst;
+    private final int globalPerSecond;
+    private final int globalBurst;
+
+    public SendRateLimits(int userPerSecond, int userBurst, int roomPerSecond, int roomBurst, int globalPerSecond,
+                          int globalBurst) {
+        if (userPerSecond < 0 || userBurst < 0 || roomPerSecond < 0 || roomBurst < 0 || globalPerSecond < 0
+                || globalBurst < 0) {
+            throw new IllegalArgumentException("Send rate limits must not be negative");
+        }
+        this.userPerSecond = userPerSecond;
+        this.userBurst = Math.max(1, userBurst);
+        this.roomPerSecond = roomPerSecond;
+        this.roomBurst = Math.max(1, roomBurst);
+        this.globalPerSecond = globalPerSecond;
+        this.globalBurst = Math.max(1, globalBurst);
+    }
+
+    // Null when the limit is off
+    TokenBucket newUserBucket() {
+        return userPerSecond > 0 ? new TokenBucket(userPerSecond, userBurst) : null;
+    }
+
+    TokenBucket newRoomBucket() {
+        return roomPerSecond > 0 ? new TokenBucket(roomPerSecond, roomBurst) : null;
+    }
+
+    TokenBucket newGlobalBucket() {
+        return globalPerSecond > 0 ? new TokenBucket(globalPerSecond, globalBurst) : null;
+    }
+
+    @Override
+    public String toString() {
+        return "SendRateLimits{user=" + userPerSecond + "/s burst " + userBurst + ", room=" + roomPerSecond
+                + "/s burst " + roomBurst + ", global=" + globalPerSecond + "/s burst " + globalBurst + "}";
+    }
+}
@@ -0,0 +1,97 @@
+package com.chat.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Checks a send against the sender's, the room's and the manager-wide buckets before it reaches
+// broadcastMessage. A send takes a token from each or from none: the sender's own bucket goes first, so a
+// spamming client is refused without touching the shared ones. Under DELAY a send that will conform within
+// the maximum delay waits for it on the sender's thread, unless that thread serves other connections too.
+class SendThrottle {
+    // Set on event-loop threads such as a selector, where waiting for one sender would stall every connection
+    private static final ThreadLocal<Boolean> NO_WAIT = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+    private final SendRateLimits limits;
+    private final TokenBucket global; // null when the limit is off
+    private final RateLimitPolicy policy;
+    private final long maxWaitNanos; // 0 under REJECT
+    private final TenantMetrics metrics;
+
+    SendThrottle(SendRateLimits limits, RateLimitPolicy policy, long maxDelayMillis, TenantMetrics metrics) {
+        this.limits = limits;
+        this.global = limits.newGlobalBucket();
+        this.policy = policy;
+        this.maxWaitNanos = policy == RateLimitPolicy.DELAY ? TimeUnit.MILLISECONDS.toNanos(maxDelayMillis) : 0;
+        this.metrics = metrics;
+    }
+
+    TokenBucket newUserBucket() {
+        return limits.newUserBucket();
+    }
+
+    TokenBucket newRoomBucket() {
+        return limits.newRoomBucket();
+    }
+
+    static void refuseWaitsOnCurrentThread() {
+        NO_WAIT.set(Boolean.TRUE);
+    }
+
+    // True if the send may go ahead; either bucket may be null. Returns after the delay, if there is one.
+    boolean acquire(TokenBucket sender, TokenBucket room) {
+        long maxWait = maxWaitNanos > 0 && NO_WAIT.get() ? 0 : maxWaitNanos;
+        long now = TokenBucket.nowNanos();
+        long senderWait = take(sender, now, maxWait);
+        if (senderWait < 0) {
+            return throttled();
+        }
+        long roomWait = take(room, now, maxWait);
+        if (roomWait < 0) {
+            refund(sender);
+            return throttled();
+        }
+        long globalWait = take(global, now, maxWait);
+        if (globalWait < 0) {
+            refund(sender);
+            refund(room);
+            return throttled();
+        }
+        long wait = Math.max(senderWait, Math.max(roomWait, globalWait));
+        if (wait > 0) {
+            metrics.sendsDelayed.increment();
+            pause(wait);
+        }
+        return true;
+    }
+
+    private static long take(TokenBucket bucket, long now, long maxWait) {
+        return bucket != null ? bucket.acquire(now, maxWait) : 0;
+    }
+
+    private static void refund(TokenBucket bucket) {
+        if (bucket != null) {
+            bucket.refund();
+        }
+    }
+
+    private boolean throttled() {
+        metrics.sendsThrottled.increment();
+        return false;
+    }
+
+    // The tokens are already taken, so an interrupted sender stops waiting and sends, keeping the interrupt
+    private static void pause(long nanos) {
+        long deadline = System.nanoTime() + nanos;
+        long left = nanos;
+        while (left > 0 && !Thread.currentThread().isInterrupted()) {
+            LockSupport.parkNanos(left);
+            left = deadline - System.nanoTime();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return limits + " " + policy + (policy == RateLimitPolicy.DELAY
+                ? " up to " + TimeUnit.NANOSECONDS.toMillis(maxWaitNanos) + " ms" : "");
+    }
+}
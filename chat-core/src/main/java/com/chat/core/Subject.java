@@ -0,0 +1,8 @@
+package com.chat.core;
+
+// Observer Pattern: Subject interface
+public interface Subject {
+    void attach(Observer observer);
+    void detach(Observer observer);
+    void notify(ChatMessage message);
+}
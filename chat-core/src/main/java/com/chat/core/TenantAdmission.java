@@ -0,0 +1,96 @@
+package com.chat.core;
+
+import java.util.*;
+
+// Enforces one tenant's quota on the rooms of its ChatRoomManager. A message is admitted against a token
+// bucket refilled at the quota's rate, and its estimated size counts as pending until the room hands it to
+// the members, so a tenant whose fan-out falls behind is refused before it can pile up memory.
+class TenantAdmission {
+    private final String tenantId;
+    private final TenantMetrics metrics;
+    private volatile TenantQuota quota;
+    private volatile TokenBucket rate; // null when the quota has no rate limit
+
+    TenantAdmission(String tenantId, TenantQuota quota) {
+        this.tenantId = tenantId;
+        this.metrics = new TenantMetrics(tenantId);
+        setQuota(quota);
+    }
+
+    // Starts the new rate with a full burst
+    void setQuota(TenantQuota quota) {
+        this.rate = quota.getMessagesPerSecond() > 0
+                ? new TokenBucket(quota.getMessagesPerSecond(), quota.getBurstMessages())
+                : null;
+        this.quota = quota;
+    }
+
+    TenantQuota getQuota() {
+        return quota;
+    }
+
+    TenantMetrics getMetrics() {
+        return metrics;
+    }
+
+    // Throws QuotaExceededException if the tenant is over its rate or its pending bytes. An admitted message
+    // must be given back through delivered or cancelled.
+    void admit(ChatMessage message) {
+        TenantQuota limits = quota;
+        TokenBucket bucket = rate;
+        if (bucket != null && bucket.acquire(0) < 0) {
+            metrics.rateLimited.increment();
+            throw new QuotaExceededException("Tenant " + tenantId + " is over its rate of "
+                    + limits.getMessagesPerSecond() + " messages per second");
+        }
+        long bytes = footprint(message);
+        long pending = metrics.pendingBytes.addAndGet(bytes);
+        // A single message larger than the limit still goes through when nothing else is pending
+        if (limits.getMaxPendingBytes() > 0 && pending > limits.getMaxPendingBytes() && pending != bytes) {
+            metrics.pendingBytes.addAndGet(-bytes);
+            metrics.memoryLimited.increment();
+            throw new QuotaExceededException("Tenant " + tenantId + " has " + (pending - bytes)
+                    + " bytes of messages waiting for delivery, limit " + limits.getMaxPendingBytes());
+        }
+        metrics.accepted.increment();
+    }
+
+    // For an admitted message the room refused after all, e.g. because it started closing
+    void cancelled(ChatMessage message) {
+        metrics.pendingBytes.addAndGet(-footprint(message));
+        metrics.accepted.decrement();
+    }
+
+    void delivered(ChatMessage message) {
+        metrics.pendingBytes.addAndGet(-footprint(message));
+        metrics.delivered.increment();
+        metrics.deliveryLagMillis.add(Math.max(0, ChatClock.currentTimeMillis() - message.getTimestampMillis()));
+    }
+
+    void delivered(List<ChatMessage> batch) {
+        long now = ChatClock.currentTimeMillis();
+        long bytes = 0;
+        long lag = 0;
+        for (ChatMessage message : batch) {
+            bytes += footprint(message);
+            lag += Math.max(0, now - message.getTimestampMillis());
+        }
+        metrics.pendingBytes.addAndGet(-bytes);
+        metrics.delivered.add(batch.size());
+        metrics.deliveryLagMillis.add(lag);
+    }
+
+    // Throws QuotaExceededException if the tenant already holds its maximum of rooms in memory
+    void admitRoom(int roomsHeld) {
+        int maxRooms = quota.getMaxRooms();
+        if (maxRooms > 0 && roomsHeld >= maxRooms) {
+            metrics.roomsRefused.increment();
+            throw new QuotaExceededException("Tenant " + tenantId + " already has " + roomsHeld + " rooms");
+        }
+    }
+
+    // Rough heap size of a message and its strings; only needs to be the same at admission and delivery
+    static long footprint(ChatMessage message) {
+        return 64 + 2L * (message.getSender().length() + message.getContent().length());
+    }
+}
@@ -0,0 +1,73 @@
+package com.chat.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Live counters for one tenant's rooms, updated on the send and delivery paths without locking
+public final class TenantMetrics {
+    private final String tenantId;
+    final LongAdder accepted = new LongAdder();
+    final LongAdder rateLimited = new LongAdder();
+    final LongAdder memoryLimited = new LongAdder();
+    final LongAdder roomsRefused = new LongAdder();
+    final LongAdder sendsThrottled = new LongAdder(); // refused by a user, room or global send limit
+    final LongAdder sendsDelayed = new LongAdder();
+    final LongAdder delivered = new LongAdder();
+    final LongAdder deliveryLagMillis = new LongAdder(); // summed over delivered messages
+    final AtomicLong pendingBytes = new AtomicLong(); // accepted, not yet handed to the members
+
+    TenantMetrics(String tenantId) {
+        this.tenantId = tenantId;
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    public long getAcceptedMessages() {
+        return accepted.sum();
+    }
+
+    public long getRateLimitedMessages() {
+        return rateLimited.sum();
+    }
+
+    public long getMemoryLimitedMessages() {
+        return memoryLimited.sum();
+    }
+
+    public long getRefusedRooms() {
+        return roomsRefused.sum();
+    }
+
+    public long getThrottledSends() {
+        return sendsThrottled.sum();
+    }
+
+    public long getDelayedSends() {
+        return sendsDelayed.sum();
+    }
+
+    public long getDeliveredMessages() {
+        return delivered.sum();
+    }
+
+    // From the message's timestamp to the moment it was handed to the members
+    public double getAverageDeliveryLagMillis() {
+        long count = delivered.sum();
+        return count > 0 ? (double) deliveryLagMillis.sum() / count : 0;
+    }
+
+    public long getPendingBytes() {
+        return pendingBytes.get();
+    }
+
+    @Override
+    public String toString() {
+        return "TenantMetrics{tenant=" + tenantId + ", accepted=" + getAcceptedMessages() + ", rateLimited="
+                + getRateLimitedMessages() + ", memoryLimited=" + getMemoryLimitedMessages() + ", roomsRefused="
+                + getRefusedRooms() + ", throttledSends=" + getThrottledSends() + ", delayedSends=" + getDelayedSends()
+                + ", delivered=" + getDeliveredMessages() + ", avgLagMillis="
+                + String.format("%.2f", getAverageDeliveryLagMillis()) + ", pendingBytes=" + getPendingBytes() + "}";
+    }
+}
@@ -0,0 +1,44 @@
+package com.chat.core;
+
+// Limits for one tenant's rooms; zero leaves a limit off. Messages are admitted at up to messagesPerSecond
+// with bursts of up to burstMessages; maxPendingBytes caps accepted messages not yet handed to their members,
+// and maxRooms caps rooms held in memory, each keeping up to the manager's history capacity.
+public final class TenantQuota {
+    public static final TenantQuota UNLIMITED = new TenantQuota(0, 0, 0, 0);
+    private final int messagesPerSecond;
+    private final int burstMessages;
+    private final long maxPendingBytes;
+    private final int maxRooms;
+
+    public TenantQuota(int messagesPerSecond, int burstMessages, long maxPendingBytes, int maxRooms) {
+        if (messagesPerSecond < 0 || burstMessages < 0 || maxPendingBytes < 0 || maxRooms < 0) {
+            throw new IllegalArgumentException("Tenant quota limits must not be negative");
+        }
+        this.messagesPerSecond = messagesPerSecond;
+        this.burstMessages = messagesPerSecond > 0 ? Math.max(1, burstMessages) : 0;
+        this.maxPendingBytes = maxPendingBytes;
+        this.maxRooms = maxRooms;
+    }
+
+    public int getMessagesPerSecond() {
+        return messagesPerSecond;
+    }
+
+    public int getBurstMessages() {
+        return burstMessages;
+    }
+
+    public long getMaxPendingBytes() {
+        return maxPendingBytes;
+    }
+
+    public int getMaxRooms() {
+        return maxRooms;
+    }
+
+    @Override
+    public String toString() {
+        return "TenantQuota{messagesPerSecond=" + messagesPerSecond + ", burstMessages=" + burstMessages
+                + ", maxPendingBytes=" + maxPendingBytes + ", maxRooms=" + maxRooms + "}";
+    }
+}
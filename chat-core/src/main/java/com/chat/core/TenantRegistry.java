@@ -0,0 +1,58 @@
+package com.chat.core;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+// One ChatRoomManager per tenant, so every tenant has its own room namespace, quota and metrics. The managers
+// share one pool of fan-out workers; each room still delivers through its own serial executor, and a tenant
+// over its quota is refused at broadcastMessage before its traffic reaches the shared workers.
+public class TenantRegistry {
+    private static final Logger LOGGER = Logger.getLogger(TenantRegistry.class.getName());
+    private final Map<String, ChatRoomManager> tenants = new ConcurrentHashMap<>();
+    private final FanOutEngine fanOutEngine;
+
+    public TenantRegistry(int fanOutThreads) {
+        this.fanOutEngine = new FanOutEngine(fanOutThreads);
+    }
+
+    // Throws IllegalArgumentException if the tenant is already registered
+    public ChatRoomManager register(String tenantId, TenantQuota quota) {
+        ChatRoomManager manager = new ChatRoomManager(tenantId, quota, fanOutEngine, false);
+        if (tenants.putIfAbsent(tenantId, manager) != null) {
+            throw new IllegalArgumentException("Tenant already registered: " + tenantId);
+        }
+        LOGGER.info("Registered tenant " + tenantId + " with " + quota);
+        return manager;
+    }
+
+    // Null if the tenant is not registered
+    public ChatRoomManager getTenant(String tenantId) {
+        return tenants.get(tenantId);
+    }
+
+    // Stops the tenant's manager (reaper, bus, store); the shared workers keep running
+    public void unregister(String tenantId) {
+        ChatRoomManager manager = tenants.remove(tenantId);
+        if (manager != null) {
+            manager.shutdown();
+            LOGGER.info("Unregistered tenant " + tenantId);
+        }
+    }
+
+    // Every tenant's live metrics, by tenant id
+    public Map<String, TenantMetrics> getMetrics() {
+        Map<String, TenantMetrics> metrics = new TreeMap<>();
+        for (ChatRoomManager manager : tenants.values()) {
+            metrics.put(manager.getTenantId(), manager.getTenantMetrics());
+        }
+        return metrics;
+    }
+
+    public void shutdown() {
+        for (String tenantId : new ArrayList<>(tenants.keySet())) {
+            unregister(tenantId);
+        }
+        fanOutEngine.shutdown();
+    }
+}
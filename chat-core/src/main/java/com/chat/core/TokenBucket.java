@@ -0,0 +1,52 @@
+package com.chat.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Lock-free token bucket refilled at tokensPerSecond and holding at most burst tokens. The whole state is one
+// AtomicLong, the time at which the bucket would be full again (the generic cell rate algorithm), so a check
+// is a clock read and one CAS and never allocates. Time comes from ChatClock, in whole milliseconds: burst
+// should cover at least one millisecond's worth of tokens, or the rate is capped at burst per millisecond.
+public final class TokenBucket {
+    private final long intervalNanos; // refill time of one token
+    private final long toleranceNanos; // how far sends may run ahead of the refill: burst - 1 tokens
+    private final AtomicLong fullAt = new AtomicLong(); // theoretical arrival time of the next token
+
+    public TokenBucket(int tokensPerSecond, int burst) {
+        if (tokensPerSecond <= 0 || burst <= 0) {
+            throw new IllegalArgumentException("Token bucket rate and burst must be positive: " + tokensPerSecond
+                    + "/s, burst " + burst);
+        }
+        this.intervalNanos = Math.max(1, 1_000_000_000L / tokensPerSecond);
+        this.toleranceNanos = (burst - 1) * intervalNanos;
+    }
+
+    // The clock every bucket is read against; callers checking several buckets read it once
+    public static long nowNanos() {
+        return ChatClock.currentTimeMillis() * 1_000_000L;
+    }
+
+    public long acquire(long maxWaitNanos) {
+        return acquire(nowNanos(), maxWaitNanos);
+    }
+
+    // Takes a token: returns 0 if one was available, or the nanoseconds until the token taken becomes due if
+    // that is within maxWaitNanos. Returns -1 and takes nothing if the wait would be longer.
+    public long acquire(long nowNanos, long maxWaitNanos) {
+        while (true) {
+            long due = fullAt.get();
+            long start = Math.max(due, nowNanos);
+            long wait = start - toleranceNanos - nowNanos;
+            if (wait > maxWaitNanos) {
+                return -1;
+            }
+            if (fullAt.compareAndSet(due, start + intervalNanos)) {
+                return Math.max(0, wait);
+            }
+        }
+    }
+
+    // Returns a token taken by acquire, e.g. when another limit refused the same send
+    public void refund() {
+        fullAt.addAndGet(-intervalNanos);
+    }
+}
@@ -0,0 +1,222 @@
+package com.chat.core;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// User class implementing Observer
+public class User implements Observer {
+    private static final Logger LOGGER = Logger.getLogger(User.class.getName());
+    private final String username;
+    private final OutboundQueue outbound;
+    // Subscriptions by room id. Each costs one entry here and one in the room's member map; rooms deliver
+    // into the single outbound queue, so fan-out never looks at this map.
+    private final Map<String, ChatRoom> rooms = new ConcurrentHashMap<>();
+    private volatile ChatRoom currentRoom; // where sendMessage(content) posts: the room joined last
+    private volatile FrameSink frameSink;
+    private volatile UserDirectory directory; // set while connected through ChatRoomManager
+    private volatile SendThrottle sendThrottle; // null unless the manager limits send rates
+    private volatile TokenBucket sendLimit; // this user's own bucket; null when only room or global limits apply
+
+    public User(String username) {
+        this(username, new OutboundQueue(1024, OverflowPolicy.DROP_OLDEST, 30_000));
+    }
+
+    public User(String username, OutboundQueue outbound) {
+        this.username = username;
+        this.outbound = outbound;
+    }
+
+    @Override
+    public void update(ChatMessage message) {
+        // In a real application, this would send the message to the user's client
+        System.out.println(message);
+    }
+
+    // Connected users queue the room's pre-encoded frame for their transport; the rest fall back to the message
+    @Override
+    public void update(ChatMessage message, EncodedFrame frame) {
+        FrameSink sink = frameSink;
+        if (sink == null) {
+            update(message);
+        } else {
+            enqueue(sink, frame);
+        }
+    }
+
+    // The whole batch is one frame, so it costs one queue slot and one wake-up of the transport
+    @Override
+    public void update(List<ChatMessage> messages, EncodedFrame frame) {
+        FrameSink sink = frameSink;
+        if (sink == null) {
+            for (ChatMessage message : messages) {
+                update(message);
+            }
+        } else {
+            enqueue(sink, frame);
+        }
+    }
+
+    private void enqueue(FrameSink sink, EncodedFrame frame) {
+        if (outbound.offer(frame)) {
+            sink.framesAvailable();
+        } else {
+            LOGGER.warning("Evicting slow consumer " + username + " (" + outbound.depth() + " frames queued, "
+                    + outbound.droppedCount() + " dropped)");
+            leaveAllRooms();
+            outbound.clear();
+            sink.disconnect();
+        }
+    }
+
+    public void setFrameSink(FrameSink frameSink) {
+        this.frameSink = frameSink;
+    }
+
+    void setDirectory(UserDirectory directory) {
+        this.directory = directory;
+    }
+
+    void setSendThrottle(SendThrottle sendThrottle) {
+        this.sendLimit = sendThrottle.newUserBucket();
+        this.sendThrottle = sendThrottle;
+    }
+
+    public OutboundQueue getOutboundQueue() {
+        return outbound;
+    }
+
+    // Adds the room to the user's subscriptions, keeping the others, and makes it the current room
+    public void joinRoom(ChatRoom room) {
+        if (rooms.putIfAbsent(room.getRoomId(), room) == null) {
+            try {
+                room.attach(this);
+            } catch (IllegalStateException e) {
+                rooms.remove(room.getRoomId(), room); // closing; ChatRoomManager.joinRoom retries
+                throw e;
+            }
+            LOGGER.info(username + " joined room " + room.getRoomId());
+        }
+        currentRoom = room;
+    }
+
+    // Leaves the current room; other subscriptions stay
+    public void leaveRoom() {
+        ChatRoom room = currentRoom;
+        if (room != null) {
+            leaveRoom(room.getRoomId());
+        }
+    }
+
+    public void leaveRoom(String roomId) {
+        ChatRoom room = rooms.remove(roomId);
+        if (room != null) {
+            if (currentRoom == room) {
+                currentRoom = null;
+            }
+            room.detach(this);
+            LOGGER.info(username + " left room " + room.getRoomId());
+        }
+    }
+
+    public void leaveAllRooms() {
+        for (String roomId : rooms.keySet()) {
+            leaveRoom(roomId);
+        }
+    }
+
+    // The room closed under the user: drop the subscription without detaching, then pass on the notice
+    void roomClosed(ChatRoom room, ChatMessage notice, EncodedFrame frame) {
+        if (rooms.remove(room.getRoomId(), room)) {
+            if (currentRoom == room) {
+                currentRoom = null;
+            }
+            update(notice, frame);
+        }
+    }
+
+    public Set<String> getRoomIds() {
+        return Collections.unmodifiableSet(rooms.keySet());
+    }
+
+    // Each send returns whether the message was accepted; it is refused when the user is not in the room, the
+    // room is closing, or a rate limit or quota applies
+    public boolean sendMessage(String content) {
+        return sendMessage(content, false, null);
+    }
+
+    public boolean sendMessage(String roomId, String content) {
+        ChatRoom room = rooms.get(roomId);
+        if (room != null) {
+            return broadcast(room, new ChatMessage(username, content, false, null));
+        }
+        LOGGER.warning(username + " attempted to send to room " + roomId + " without joining it");
+        return false;
+    }
+
+    // Connected users reach the recipient wherever they are; otherwise only within the current room
+    public boolean sendPrivateMessage(String content, String recipient) {
+        UserDirectory users = directory;
+        if (users != null) {
+            if (!permitSend(null)) {
+                return false;
+            }
+            try {
+                users.route(new ChatMessage(username, content, true, recipient));
+                return true;
+            } catch (QuotaExceededException e) {
+                if (LOGGER.isLoggable(Level.FINE)) {
+                    LOGGER.fine(username + " could not send a private message: " + e.getMessage());
+                }
+                return false;
+            }
+        }
+        return sendMessage(content, true, recipient);
+    }
+
+    private boolean sendMessage(String content, boolean isPrivate, String recipient) {
+        ChatRoom room = currentRoom;
+        if (room != null) {
+            return broadcast(room, new ChatMessage(username, content, isPrivate, recipient));
+        }
+        LOGGER.warning(username + " attempted to send a message without being in a room");
+        return false;
+    }
+
+    private boolean broadcast(ChatRoom room, ChatMessage message) {
+        if (!permitSend(room)) {
+            return false;
+        }
+        try {
+            room.broadcastMessage(message);
+            return true;
+        } catch (QuotaExceededException e) {
+            // Expected under load, like a rate limit refusal, so it must not flood the log either
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine(username + " could not send to room " + room.getRoomId() + ": " + e.getMessage());
+            }
+            return false;
+        } catch (IllegalStateException e) {
+            LOGGER.warning(username + " could not send to room " + room.getRoomId() + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Rate limits come before the message reaches the room; a refusal is logged only at FINE, since a
+    // spamming client would otherwise flood the log
+    private boolean permitSend(ChatRoom room) {
+        SendThrottle throttle = sendThrottle;
+        if (throttle == null || throttle.acquire(sendLimit, room != null ? room.getSendLimit() : null)) {
+            return true;
+        }
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine(username + " is over a send rate limit" + (room != null ? " in room " + room.getRoomId() : ""));
+        }
+        return false;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+}
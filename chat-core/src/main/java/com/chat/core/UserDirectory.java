@@ -0,0 +1,109 @@
+package com.chat.core;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Node-wide username -> session index that routes private messages straight to the recipient, whichever room
+// (if any) they are in, without touching room state. Messages for a user who is not connected wait in a
+// bounded mailbox, oldest dropped first, and are delivered in order when that user next connects.
+class UserDirectory {
+    private static final Logger LOGGER = Logger.getLogger(UserDirectory.class.getName());
+    static final int DEFAULT_MAILBOX_CAPACITY = 256;
+    private static final FrameEncoder FRAMES = new FrameEncoder(1024, 1024);
+
+    // Exactly one of user and mailbox is set
+    private static final class Entry {
+        final User user;
+        final Deque<ChatMessage> mailbox;
+
+        Entry(User user) {
+            this.user = user;
+            this.mailbox = null;
+        }
+
+        Entry(Deque<ChatMessage> mailbox) {
+            this.user = null;
+            this.mailbox = mailbox;
+        }
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final int mailboxCapacity;
+    private final TenantAdmission admission;
+
+    UserDirectory(int mailboxCapacity, TenantAdmission admission) {
+        this.mailboxCapacity = mailboxCapacity;
+        this.admission = admission;
+    }
+
+    // Replaces any earlier session under the same name. Queued messages are delivered inside the map's
+    // per-key update, so a private message routed concurrently cannot overtake them.
+    void connect(User user) {
+        String username = user.getUsername();
+        entries.compute(username, (name, entry) -> {
+            user.setDirectory(this);
+            if (entry != null && entry.mailbox != null) {
+                LOGGER.info("Delivering " + entry.mailbox.size() + " queued private messages to " + name);
+                for (ChatMessage message : entry.mailbox) {
+                    deliver(user, message);
+                }
+            }
+            return new Entry(user);
+        });
+    }
+
+    // Only removes the given session, so a stale disconnect cannot unregister a newer connection
+    void disconnect(User user) {
+        entries.computeIfPresent(user.getUsername(), (name, entry) -> entry.user == user ? null : entry);
+    }
+
+    User find(String username) {
+        Entry entry = entries.get(username);
+        return entry != null ? entry.user : null;
+    }
+
+    // Private messages count against the tenant's quota like room messages: throws QuotaExceededException
+    // if the tenant is over it. A routed message stops counting as pending once it is queued for the
+    // recipient or left in their mailbox.
+    void route(ChatMessage message) {
+        admission.admit(message);
+        try {
+            routeAdmitted(message);
+        } finally {
+            admission.delivered(message);
+        }
+    }
+
+    private void routeAdmitted(ChatMessage message) {
+        Entry entry = entries.get(message.getRecipient());
+        if (entry != null && entry.user != null) {
+            deliver(entry.user, message);
+            return;
+        }
+        entries.compute(message.getRecipient(), (name, current) -> {
+            if (current != null && current.user != null) {
+                deliver(current.user, message); // connected since the lock-free lookup
+                return current;
+            }
+            Entry offline = current != null ? current : new Entry(new ArrayDeque<>());
+            if (offline.mailbox.size() == mailboxCapacity) {
+                offline.mailbox.pollFirst();
+            }
+            offline.mailbox.addLast(message);
+            return offline;
+        });
+    }
+
+    private static void deliver(User recipient, ChatMessage message) {
+        EncodedFrame frame = FRAMES.encode(message);
+        try {
+            recipient.update(message, frame);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Private delivery to " + recipient.getUsername() + " failed", e);
+        } finally {
+            frame.release();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.chat.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChatApplicationTest {
+    private static final CommunicationAdapter NO_ADAPTER = new CommunicationAdapter() {
+        @Override
+        public void sendMessage(ChatMessage message) {
+        }
+
+        @Override
+        public ChatMessage receiveMessage() {
+            return null;
+        }
+    };
+
+    // Like a transport connection, which only learns its user once createUser returns
+    private static final class CountingSink implements FrameSink {
+        final AtomicInteger announcements = new AtomicInteger();
+
+        @Override
+        public void framesAvailable() {
+            announcements.incrementAndGet();
+        }
+
+        @Override
+        public void disconnect() {
+        }
+    }
+
+    @Test
+    void privateMessagesQueuedWhileOfflineReachTheTransport() {
+        ChatRoomManager manager = new ChatRoomManager();
+        try {
+            ChatApplication application = new ChatApplication(NO_ADAPTER, manager);
+            User alice = application.createUser("alice", new CountingSink());
+            application.sendPrivateMessage(alice, "bob", "first");
+            application.sendPrivateMessage(alice, "bob", "second");
+
+            CountingSink sink = new CountingSink();
+            User bob = application.createUser("bob", sink);
+            assertTrue(sink.announcements.get() > 0);
+
+            MessageCodec codec = new MessageCodec();
+            List<String> received = new ArrayList<>();
+            EncodedFrame frame;
+            while ((frame = bob.getOutboundQueue().poll()) != null) {
+                ByteBuffer messages = frame.view();
+                while (messages.hasRemaining()) {
+                    received.add(codec.decode(messages).getContent());
+                }
+                frame.release();
+            }
+            assertEquals(List.of("first", "second"), received);
+        } finally {
+            manager.shutdown();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.chat.core;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ChatRoomManagerTest {
+    // In-memory logs; openLog fails while failing is set, like a store whose disk is unavailable
+    private static final class TestStore implements MessageStore {
+        final AtomicInteger opened = new AtomicInteger();
+        volatile boolean failing;
+
+        @Override
+        public MessageLog openLog(String roomId) {
+            if (failing) {
+                throw new IllegalStateException("cannot open log for " + roomId);
+            }
+            opened.incrementAndGet();
+            return new ChatRoomTest.FlakyLog();
+        }
+
+        @Override
+        public void closeLog(String roomId) {
+        }
+
+        @Override
+        public void deleteLog(String roomId) {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private final ChatRoomManager manager = new ChatRoomManager();
+    private final TestStore store = new TestStore();
+
+    @AfterEach
+    void shutdown() {
+        manager.shutdown();
+    }
+
+    @Test
+    void concurrentCreatesBuildOneRoom() throws InterruptedException {
+        manager.setMessageStore(store);
+        CountDownLatch start = new CountDownLatch(1);
+        Queue<ChatRoom> created = new ConcurrentLinkedQueue<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                created.add(manager.createRoom("lobby"));
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(16, created.size());
+        for (ChatRoom room : created) {
+            assertSame(manager.getRoom("lobby"), room);
+        }
+        assertEquals(1, store.opened.get());
+    }
+
+    @Test
+    void failedRehydrationKeepsTheSpilledRoom() {
+        manager.setMessageStore(store);
+        ChatRoom evicted = manager.createRoom("lobby");
+        assertEquals(1, manager.reapIdleRooms(-60_000)); // idle since a minute from now: every room qualifies
+        store.failing = true;
+        assertThrows(IllegalStateException.class, () -> manager.getRoom("lobby"));
+        store.failing = false;
+        ChatRoom rehydrated = manager.getRoom("lobby");
+        assertNotNull(rehydrated); // still known as spilled, not forgotten
+        assertEquals(RoomState.ACTIVE, rehydrated.getState());
+        assertEquals(RoomState.CLOSED, evicted.getState());
+    }
+
+    // Closed through the room rather than removeRoom: joining must get a new room, not retry the closed one forever
+    @Test
+    void joinAfterAPublicCloseGetsANewRoom() throws InterruptedException {
+        ChatRoom closed = manager.createRoom("lobby");
+        closed.close().join();
+        TestUsers.Recorder bob = TestUsers.recorder("bob");
+        manager.connectUser(bob.user);
+        ChatRoom[] joined = new ChatRoom[1];
+        Thread joiner = new Thread(() -> joined[0] = manager.joinRoom(bob.user, "lobby"));
+        joiner.setDaemon(true);
+        joiner.start();
+        joiner.join(5000);
+        assertNotNull(joined[0]);
+        assertNotSame(closed, joined[0]);
+        assertEquals(RoomState.ACTIVE, joined[0].getState());
+    }
+}
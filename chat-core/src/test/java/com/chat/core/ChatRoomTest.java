@@ -0,0 +1,209 @@
+package com.chat.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChatRoomTest {
+    // In-memory log whose appends fail on the sequences it is told to reject
+    static class FlakyLog implements MessageLog {
+        private final List<ChatMessage> appended = new ArrayList<>();
+        private final Set<Long> failing;
+
+        FlakyLog(Long... failing) {
+            this.failing = new HashSet<>(Arrays.asList(failing));
+        }
+
+        @Override
+        public void append(ChatMessage message) {
+            if (failing.contains(message.getSequence())) {
+                throw new IllegalStateException("disk full");
+            }
+            appended.add(message);
+        }
+
+        @Override
+        public List<ChatMessage> readAfter(long afterSequence, int limit) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public List<ChatMessage> readBefore(long beforeSequence, int limit) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public long lastSequence() {
+            return 0;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    // Log whose first append holds its sender until released, like a write stuck on a failing disk
+    private static final class StuckLog extends FlakyLog {
+        final CountDownLatch appending = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public void append(ChatMessage message) {
+            appending.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            super.append(message);
+        }
+    }
+
+    private static ChatMessage message(String content) {
+        return new ChatMessage("alice", content, false, null);
+    }
+
+    private static List<String> contents(List<ChatMessage> messages) {
+        List<String> contents = new ArrayList<>();
+        for (ChatMessage message : messages) {
+            contents.add(message.getContent());
+        }
+        return contents;
+    }
+
+    @Test
+    void failedAppendLeavesNoHoleInHistoryOrDelivery() {
+        ChatRoom room = new ChatRoom("r", DeliveryMode.SYNCHRONOUS, Runnable::run, 100, new FlakyLog(2L));
+        TestUsers.Recorder member = TestUsers.recorder("bob");
+        member.user.joinRoom(room);
+        for (int i = 1; i <= 5; i++) {
+            ChatMessage message = message("m" + i);
+            if (i == 2) {
+                assertThrows(IllegalStateException.class, () -> room.broadcastMessage(message));
+            } else {
+                room.broadcastMessage(message);
+            }
+        }
+        List<String> accepted = List.of("m1", "m3", "m4", "m5");
+        assertEquals(accepted, contents(room.getMessageHistory()));
+        assertEquals(accepted, contents(room.getMessageHistory(0, 10)));
+        assertEquals(accepted, member.contents());
+    }
+
+    @Test
+    void rebroadcastIsRefusedWithoutStallingTheRoom() {
+        ChatRoom room = new ChatRoom("r", DeliveryMode.SYNCHRONOUS, Runnable::run, 100);
+        TestUsers.Recorder member = TestUsers.recorder("bob");
+        member.user.joinRoom(room);
+        ChatMessage first = message("first");
+        room.broadcastMessage(first);
+        assertThrows(IllegalStateException.class, () -> room.broadcastMessage(first));
+        room.broadcastMessage(message("second"));
+        assertEquals(List.of("first", "second"), contents(room.getMessageHistory()));
+        assertEquals(List.of("first", "second"), member.contents());
+        assertEquals(2L, room.getLastSequence());
+    }
+
+    @Test
+    void closeDeliversAcceptedMessagesThenReleasesMembers() {
+        ChatRoom room = new ChatRoom("r", DeliveryMode.SYNCHRONOUS, Runnable::run, 100);
+        TestUsers.Recorder member = TestUsers.recorder("bob");
+        member.user.joinRoom(room);
+        room.broadcastMessage(message("before"));
+        room.close().join();
+        assertEquals(RoomState.CLOSED, room.getState());
+        assertEquals(List.of("before", "Room r was closed"), member.contents());
+        assertTrue(room.getActiveUsers().isEmpty());
+        assertThrows(IllegalStateException.class, () -> room.broadcastMessage(message("after")));
+        assertEquals(List.of("before"), contents(room.getMessageHistory()));
+    }
+
+    @Test
+    void closeStopsWaitingForASendStuckInTheLog() throws InterruptedException {
+        StuckLog log = new StuckLog();
+        ChatRoom room = new ChatRoom("r", DeliveryMode.SYNCHRONOUS, Runnable::run, 100, log);
+        Thread sender = new Thread(() -> room.broadcastMessage(message("stuck")));
+        sender.start();
+        try {
+            assertTrue(log.appending.await(5, TimeUnit.SECONDS));
+            long start = System.nanoTime();
+            room.close().join();
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(30));
+            assertEquals(RoomState.CLOSED, room.getState());
+        } finally {
+            log.release.countDown();
+            sender.join();
+        }
+        // The send that was accepted before the close still completes
+        assertEquals(List.of("stuck"), contents(room.getMessageHistory()));
+    }
+
+    // As a proxy sees them: the owner removed the room and created it again, so numbering started over
+    @Test
+    void proxyDeliversARecreatedRoomsMessagesAndDropsStaleOnes() {
+        ChatRoom proxy = new ChatRoom("r", DeliveryMode.SYNCHRONOUS, Runnable::run, 100);
+        TestUsers.Recorder member = TestUsers.recorder("bob");
+        member.user.joinRoom(proxy);
+        proxy.deliverReplicated(replicated("old-1", 100, 1));
+        proxy.deliverReplicated(replicated("old-2", 100, 2));
+        proxy.deliverReplicated(replicated("old-2", 100, 2)); // redelivered by the bus
+        proxy.deliverReplicated(replicated("new-1", 200, 1));
+        proxy.deliverReplicated(replicated("old-3", 100, 3)); // from before the room was recreated
+        proxy.deliverReplicated(replicated("new-2", 200, 2));
+        assertEquals(List.of("old-1", "old-2", "new-1", "new-2"), member.contents());
+    }
+
+    private static ChatMessage replicated(String content, long incarnation, long sequence) {
+        return new ChatMessage("alice", content, false, null, "r", 1, sequence, incarnation);
+    }
+
+    @Test
+    void staleSessionLeavingKeepsTheOneThatReplacedIt() {
+        ChatRoom room = new ChatRoom("r", DeliveryMode.SYNCHRONOUS, Runnable::run, 100);
+        TestUsers.Recorder stale = TestUsers.recorder("bob");
+        TestUsers.Recorder current = TestUsers.recorder("bob");
+        stale.user.joinRoom(room);
+        current.user.joinRoom(room);
+        room.detach(stale.user);
+        assertEquals(List.of("bob"), room.getActiveUsers());
+        room.broadcastMessage(message("still here"));
+        assertEquals(List.of("still here"), current.contents());
+        assertTrue(stale.received.isEmpty());
+    }
+
+    // The reaper drains the room for eviction, a sender is stuck, and a close arrives before the drain gives up
+    @Test
+    void closeDuringAnEvictionThatTimesOutStillCompletes() throws Exception {
+        StuckLog log = new StuckLog();
+        ChatRoom room = new ChatRoom("r", DeliveryMode.SYNCHRONOUS, Runnable::run, 100, log);
+        Thread sender = new Thread(() -> room.broadcastMessage(message("stuck")));
+        sender.start();
+        try {
+            assertTrue(log.appending.await(5, TimeUnit.SECONDS));
+            boolean[] evicted = {true};
+            Thread reaper = new Thread(() -> evicted[0] = room.tryEvict(Long.MAX_VALUE));
+            reaper.start();
+            assertTrue(TestUsers.await(() -> room.getState() == RoomState.DRAINING, 5000));
+            CompletableFuture<Void> closed = room.close();
+            reaper.join();
+            assertFalse(evicted[0]);
+            closed.get(5, TimeUnit.SECONDS);
+            assertEquals(RoomState.CLOSED, room.getState());
+        } finally {
+            log.release.countDown();
+            sender.join();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.chat.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MessageCodecTest {
+    private final MessageCodec codec = new MessageCodec();
+
+    private ChatMessage roundTrip(ChatMessage message) {
+        ByteBuffer buffer = ByteBuffer.allocate(codec.encodedLength(message));
+        codec.encode(message, buffer);
+        assertFalse(buffer.hasRemaining(), "encodedLength must match the bytes written");
+        buffer.flip();
+        ChatMessage decoded = codec.decode(buffer);
+        assertFalse(buffer.hasRemaining(), "decode must consume the whole frame");
+        return decoded;
+    }
+
+    @Test
+    void roundTripsRoomMessage() {
+        ChatMessage message = new ChatMessage("alice", "hello, room", false, null, "room-1", 1_700_000_000_123L, 42);
+        ChatMessage decoded = roundTrip(message);
+        assertEquals("alice", decoded.getSender());
+        assertEquals("hello, room", decoded.getContent());
+        assertEquals("room-1", decoded.getRoomId());
+        assertEquals(1_700_000_000_123L, decoded.getTimestampMillis());
+        assertEquals(42L, decoded.getSequence());
+        assertFalse(decoded.isPrivate());
+        assertNull(decoded.getRecipient());
+        assertEquals(0L, decoded.getRoomIncarnation());
+    }
+
+    @Test
+    void roundTripsRoomIncarnation() {
+        ChatMessage decoded = roundTrip(new ChatMessage("alice", "again", false, null, "room-1", 7, 1,
+                1_700_000_000_456L));
+        assertEquals(1_700_000_000_456L, decoded.getRoomIncarnation());
+        assertEquals(1L, decoded.getSequence());
+        assertEquals("again", decoded.getContent());
+    }
+
+    @Test
+    void roundTripsPrivateMessageWithoutRoom() {
+        ChatMessage decoded = roundTrip(new ChatMessage("bob", "psst", true, "carol", null, 5, 0));
+        assertEquals("carol", decoded.getRecipient());
+        assertNull(decoded.getRoomId());
+        assertEquals(true, decoded.isPrivate());
+    }
+
+    @Test
+    void roundTripsMultiByteText() {
+        String content = "caf\u00e9 \u20ac \ud83d\ude00 " + "x".repeat(300);
+        String sender = "\u00fc".repeat(40); // longer than the interned id limit once encoded
+        ChatMessage decoded = roundTrip(new ChatMessage(sender, content, false, null, "r", 1, 1));
+        assertEquals(sender, decoded.getSender());
+        assertEquals(content, decoded.getContent());
+    }
+
+    @Test
+    void unpairedSurrogateEncodesAsQuestionMark() {
+        assertEquals("a?b", roundTrip(new ChatMessage("s", "a\ud800b", false, null, null, 1, 1)).getContent());
+    }
+
+    @Test
+    void decodesFramesBackToBack() {
+        ChatMessage first = new ChatMessage("a", "one", false, null, "r", 1, 1);
+        ChatMessage second = new ChatMessage("b", "two", false, null, "r", 2, 2);
+        ByteBuffer buffer = ByteBuffer.allocate(codec.encodedLength(first) + codec.encodedLength(second));
+        codec.encode(first, buffer);
+        codec.encode(second, buffer);
+        buffer.flip();
+        assertEquals(2L, MessageCodec.peekSequence(buffer, codec.encodedLength(first)));
+        assertEquals("one", codec.decode(buffer).getContent());
+        assertEquals("two", codec.decode(buffer).getContent());
+    }
+
+    private static ByteBuffer bytes(int... values) {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length);
+        for (int value : values) {
+            buffer.put((byte) value);
+        }
+        return buffer.flip();
+    }
+
+    @Test
+    void rejectsOversizedLengthWithoutAllocating() {
+        // Version, sequence 0, timestamp 0, no flags, then a sender length of 2^31 - 16 with no bytes behind it
+        ByteBuffer frame = bytes(0x01, 0x00, 0x00, 0x00, 0xF0, 0xFF, 0xFF, 0xFF, 0x07);
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(frame));
+    }
+
+    @Test
+    void rejectsContentLengthBeyondFrame() {
+        ChatMessage message = new ChatMessage("alice", "hello", false, null, "room", 1, 1);
+        ByteBuffer buffer = ByteBuffer.allocate(codec.encodedLength(message));
+        codec.encode(message, buffer);
+        // The content length is the byte just before "hello"; claim a few bytes more than the frame holds
+        buffer.put(buffer.position() - 6, (byte) 9);
+        buffer.flip();
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(buffer));
+    }
+
+    @Test
+    void rejectsLengthThatOverflowsAnInt() {
+        // A 5-byte varint above Integer.MAX_VALUE must not wrap into a small or negative length
+        ByteBuffer frame = bytes(0x01, 0x00, 0x00, 0x00, 0x81, 0x80, 0x80, 0x80, 0x10, 'a');
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(frame));
+    }
+
+    @Test
+    void rejectsTruncatedFrames() {
+        ChatMessage message = new ChatMessage("alice", "hello there", true, "bob", "room", 1_700_000_000_000L, 300);
+        ByteBuffer full = ByteBuffer.allocate(codec.encodedLength(message));
+        codec.encode(message, full);
+        byte[] encoded = full.array();
+        for (int length = 0; length < encoded.length; length++) {
+            ByteBuffer truncated = ByteBuffer.wrap(Arrays.copyOf(encoded, length));
+            try {
+                codec.decode(truncated);
+                throw new AssertionError("Decoded a frame cut to " + length + " of " + encoded.length + " bytes");
+            } catch (BufferUnderflowException | IllegalArgumentException expected) {
+                // either the fixed fields or a string ran past the end
+            }
+        }
+    }
+
+    @Test
+    void decodesVersionOneFrames() {
+        // Version 1, sequence 5, timestamp 7, room flag, sender "a", room "r", content "hi"
+        ChatMessage decoded = codec.decode(bytes(0x01, 0x05, 0x07, 0x04, 0x01, 'a', 0x01, 'r', 0x02, 'h', 'i'));
+        assertEquals("r", decoded.getRoomId());
+        assertEquals("hi", decoded.getContent());
+        assertEquals(5L, decoded.getSequence());
+        assertEquals(0L, decoded.getRoomIncarnation());
+    }
+
+    @Test
+    void rejectsFlagsTheVersionDoesNotDefine() {
+        // The incarnation flag in a version 1 frame, and an undefined flag in a current one
+        assertThrows(IllegalArgumentException.class,
+                () -> codec.decode(bytes(0x01, 0x01, 0x01, 0x08, 0x01, 'a', 0x01, 0x01, 'x')));
+        assertThrows(IllegalArgumentException.class,
+                () -> codec.decode(bytes(MessageCodec.VERSION, 0x01, 0x01, 0x10, 0x01, 'a', 0x01, 'x')));
+    }
+
+    @Test
+    void rejectsUnknownVersions() {
+        assertThrows(IllegalArgumentException.class,
+                () -> codec.decode(bytes(MessageCodec.VERSION + 1, 0x01, 0x01, 0x00, 0x01, 'a', 0x01, 'x')));
+    }
+}
@@ -0,0 +1,103 @@
+package com.chat.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// 64 sender threads broadcast into two rooms at once; every member of both rooms must see each room's messages
+// with sequences 1, 2, 3, ... in order, in every delivery mode
+class OrderingStressTest {
+    private static final int SENDERS = 64;
+    private static final int MESSAGES_PER_SENDER = 200;
+    private static final int MEMBERS = 8;
+
+    @Test
+    void synchronousDeliveryKeepsPerRoomOrder() throws Exception {
+        stress(DeliveryMode.SYNCHRONOUS);
+    }
+
+    @Test
+    void asynchronousDeliveryKeepsPerRoomOrder() throws Exception {
+        stress(DeliveryMode.ASYNCHRONOUS);
+    }
+
+    @Test
+    void batchedDeliveryKeepsPerRoomOrder() throws Exception {
+        stress(DeliveryMode.BATCHED);
+    }
+
+    private static void stress(DeliveryMode mode) throws Exception {
+        FanOutEngine fanOutEngine = new FanOutEngine(4);
+        try {
+            ChatRoom[] rooms = {
+                    new ChatRoom("left", mode, fanOutEngine.newRoomExecutor(), 1000),
+                    new ChatRoom("right", mode, fanOutEngine.newRoomExecutor(), 1000)
+            };
+            List<TestUsers.Recorder> members = new ArrayList<>();
+            for (int i = 0; i < MEMBERS; i++) {
+                TestUsers.Recorder member = TestUsers.recorder("member" + i);
+                for (ChatRoom room : rooms) {
+                    member.user.joinRoom(room);
+                }
+                members.add(member);
+            }
+            CountDownLatch start = new CountDownLatch(1);
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            List<Thread> senders = new ArrayList<>();
+            for (int i = 0; i < SENDERS; i++) {
+                ChatRoom room = rooms[i % rooms.length];
+                String sender = "sender" + i;
+                Thread thread = new Thread(() -> {
+                    try {
+                        start.await();
+                        for (int n = 0; n < MESSAGES_PER_SENDER; n++) {
+                            room.broadcastMessage(new ChatMessage(sender, sender + "-" + n, false, null));
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                });
+                thread.start();
+                senders.add(thread);
+            }
+            start.countDown();
+            for (Thread thread : senders) {
+                thread.join();
+            }
+            assertNull(failure.get(), "A sender failed: " + failure.get());
+            long perRoom = (long) SENDERS / rooms.length * MESSAGES_PER_SENDER;
+            for (ChatRoom room : rooms) {
+                assertEquals(perRoom, room.getLastSequence());
+            }
+            for (TestUsers.Recorder member : members) {
+                assertTrue(TestUsers.await(() -> member.received.size() == perRoom * rooms.length, 30_000),
+                        member.user.getUsername() + " received " + member.received.size() + " messages");
+                checkOrder(member);
+            }
+        } finally {
+            fanOutEngine.shutdown();
+        }
+    }
+
+    private static void checkOrder(TestUsers.Recorder member) {
+        Map<String, Long> lastByRoom = new HashMap<>();
+        Map<String, Integer> lastBySender = new HashMap<>();
+        for (ChatMessage message : member.received) {
+            long previous = lastByRoom.getOrDefault(message.getRoomId(), 0L);
+            assertEquals(previous + 1, message.getSequence(), member.user.getUsername() + " in room "
+                    + message.getRoomId());
+            lastByRoom.put(message.getRoomId(), message.getSequence());
+            // Each sender's own messages also keep the order it sent them in
+            String content = message.getContent();
+            int n = Integer.parseInt(content.substring(content.lastIndexOf('-') + 1));
+            assertEquals(lastBySender.getOrDefault(message.getSender(), -1) + 1, n, content);
+            lastBySender.put(message.getSender(), n);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.chat.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RingBufferTest {
+    @Test
+    void keepsTheLastCapacityEntries() {
+        RingBuffer<String> buffer = new RingBuffer<>(3);
+        for (String value : List.of("a", "b", "c", "d", "e")) {
+            buffer.add(value);
+        }
+        assertEquals(List.of("c", "d", "e"), buffer.snapshot());
+        assertEquals(List.of("d", "e"), buffer.readAfter(3, 10));
+        assertEquals(List.of("c", "d"), buffer.readBefore(5, 2));
+    }
+
+    @Test
+    void readersStepOverSkippedSequences() {
+        RingBuffer<String> buffer = new RingBuffer<>(8);
+        buffer.add("a");
+        buffer.skip(buffer.claim());
+        buffer.add("c");
+        buffer.add("d");
+        assertEquals(List.of("a", "c", "d"), buffer.snapshot());
+        assertEquals(List.of("c", "d"), buffer.readAfter(1, 10));
+        assertEquals(List.of("a", "c"), buffer.readBefore(4, 3));
+    }
+
+    @Test
+    void stopsAtAWriteStillInFlight() {
+        RingBuffer<String> buffer = new RingBuffer<>(8);
+        buffer.add("a");
+        long pending = buffer.claim();
+        buffer.add("c");
+        assertEquals(List.of("a"), buffer.snapshot());
+        buffer.publish(pending, "b");
+        assertEquals(List.of("a", "b", "c"), buffer.snapshot());
+    }
+
+    @Test
+    void resumesAfterPreloadedEntries() {
+        RingBuffer<String> buffer = new RingBuffer<>(4, 10, List.of("i", "j"));
+        assertEquals(11L, buffer.add("k"));
+        assertEquals(List.of("i", "j", "k"), buffer.snapshot());
+    }
+}
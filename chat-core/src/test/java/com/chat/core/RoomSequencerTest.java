@@ -0,0 +1,38 @@
+package com.chat.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RoomSequencerTest {
+    private static ChatMessage numbered(long sequence) {
+        return new ChatMessage("s", "m" + sequence, false, null, "r", 1, sequence);
+    }
+
+    @Test
+    void deliversInSequenceOrderWhateverThePublishOrder() {
+        List<Long> delivered = new ArrayList<>();
+        RoomSequencer sequencer = new RoomSequencer(8, 0, message -> delivered.add(message.getSequence()));
+        sequencer.publish(3, numbered(3));
+        sequencer.publish(2, numbered(2));
+        assertEquals(List.of(), delivered);
+        sequencer.publish(1, numbered(1));
+        assertEquals(List.of(1L, 2L, 3L), delivered);
+        assertTrue(sequencer.hasDelivered(3));
+        assertFalse(sequencer.hasDelivered(4));
+    }
+
+    @Test
+    void skippedSequencesDoNotStallDelivery() {
+        List<Long> delivered = new ArrayList<>();
+        RoomSequencer sequencer = new RoomSequencer(8, 10, message -> delivered.add(message.getSequence()));
+        sequencer.publish(13, numbered(13));
+        sequencer.skip(11);
+        sequencer.publish(12, numbered(12));
+        assertEquals(List.of(12L, 13L), delivered);
+    }
+}
@@ -0,0 +1,75 @@
+package com.chat.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SendThrottleTest {
+    // Ten sends a second with a burst of two: the third send in a row is a tenth of a second early
+    private static final SendRateLimits USER_LIMIT = new SendRateLimits(10, 2, 0, 0, 0, 0);
+
+    @Test
+    void rejectRefusesSendsBeyondTheBurst() {
+        TenantMetrics metrics = new TenantMetrics("test");
+        SendThrottle throttle = new SendThrottle(USER_LIMIT, RateLimitPolicy.REJECT, 0, metrics);
+        TokenBucket sender = throttle.newUserBucket();
+        assertTrue(throttle.acquire(sender, null));
+        assertTrue(throttle.acquire(sender, null));
+        assertFalse(throttle.acquire(sender, null));
+        assertEquals(1, metrics.sendsThrottled.sum());
+    }
+
+    @Test
+    void roomRefusalHandsTheSendersTokenBack() {
+        SendThrottle throttle = new SendThrottle(new SendRateLimits(10, 1, 10, 1, 0, 0), RateLimitPolicy.REJECT,
+                0, new TenantMetrics("test"));
+        TokenBucket sender = throttle.newUserBucket();
+        TokenBucket busyRoom = throttle.newRoomBucket();
+        assertEquals(0, busyRoom.acquire(0));
+        assertFalse(throttle.acquire(sender, busyRoom));
+        // The refused send took nothing from the sender, who can still use another room straight away
+        assertTrue(throttle.acquire(sender, throttle.newRoomBucket()));
+    }
+
+    @Test
+    void delayWaitsForTheTokenOnTheSendersThread() {
+        TenantMetrics metrics = new TenantMetrics("test");
+        SendThrottle throttle = new SendThrottle(USER_LIMIT, RateLimitPolicy.DELAY, 1000, metrics);
+        TokenBucket sender = throttle.newUserBucket();
+        assertTrue(throttle.acquire(sender, null));
+        assertTrue(throttle.acquire(sender, null));
+        long start = System.nanoTime();
+        assertTrue(throttle.acquire(sender, null));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(1, metrics.sendsDelayed.sum());
+    }
+
+    @Test
+    void delayRefusesRatherThanParkingAnEventLoopThread() throws InterruptedException {
+        TenantMetrics metrics = new TenantMetrics("test");
+        SendThrottle throttle = new SendThrottle(USER_LIMIT, RateLimitPolicy.DELAY, 1000, metrics);
+        TokenBucket sender = throttle.newUserBucket();
+        AtomicBoolean third = new AtomicBoolean(true);
+        AtomicLong elapsed = new AtomicLong();
+        Thread selector = new Thread(() -> {
+            ChatApplication.refuseSendDelaysOnCurrentThread();
+            throttle.acquire(sender, null);
+            throttle.acquire(sender, null);
+            long start = System.nanoTime();
+            third.set(throttle.acquire(sender, null));
+            elapsed.set(System.nanoTime() - start);
+        }, "test-selector");
+        selector.start();
+        selector.join();
+        assertFalse(third.get());
+        assertTrue(elapsed.get() < TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(0, metrics.sendsDelayed.sum());
+        assertEquals(1, metrics.sendsThrottled.sum());
+    }
+}
@@ -0,0 +1,52 @@
+package com.chat.core;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TenantQuotaTest {
+    // One message a second with a burst of two: the third send in a row is over the rate
+    private final ChatRoomManager manager = new ChatRoomManager("acme", new TenantQuota(1, 2, 0, 1));
+
+    @AfterEach
+    void shutdown() {
+        manager.shutdown();
+    }
+
+    @Test
+    void roomMessagesAreRefusedOverTheTenantRate() {
+        TestUsers.Recorder alice = TestUsers.recorder("alice");
+        manager.connectUser(alice.user);
+        manager.joinRoom(alice.user, "lobby");
+        assertTrue(alice.user.sendMessage("lobby", "one"));
+        assertTrue(alice.user.sendMessage("lobby", "two"));
+        assertFalse(alice.user.sendMessage("lobby", "three"));
+        assertEquals(1, manager.getTenantMetrics().getRateLimitedMessages());
+    }
+
+    @Test
+    void privateMessagesShareTheTenantRate() throws InterruptedException {
+        TestUsers.Recorder alice = TestUsers.recorder("alice");
+        TestUsers.Recorder bob = TestUsers.recorder("bob");
+        manager.connectUser(alice.user);
+        manager.connectUser(bob.user);
+        manager.joinRoom(alice.user, "lobby");
+        assertTrue(alice.user.sendMessage("lobby", "one"));
+        assertTrue(alice.user.sendPrivateMessage("two", "bob"));
+        assertFalse(alice.user.sendPrivateMessage("three", "bob"));
+        assertEquals(1, bob.received.size());
+        // The room may still be fanning out "one"; the private message stopped counting once routed
+        assertTrue(TestUsers.await(() -> manager.getTenantMetrics().getPendingBytes() == 0, 5000));
+    }
+
+    @Test
+    void roomsBeyondTheQuotaAreRefused() {
+        manager.createRoom("lobby");
+        assertThrows(QuotaExceededException.class, () -> manager.createRoom("second"));
+        assertEquals(1, manager.getRoomCount());
+    }
+}
@@ -0,0 +1,66 @@
+package com.chat.core;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BooleanSupplier;
+
+// Users whose transport decodes every frame it receives, so tests can check exactly what each member saw
+final class TestUsers {
+    private TestUsers() {
+    }
+
+    static final class Recorder implements FrameSink {
+        final User user;
+        final Queue<ChatMessage> received = new ConcurrentLinkedQueue<>();
+        private final MessageCodec codec = new MessageCodec();
+        volatile boolean disconnected;
+
+        Recorder(String username) {
+            this.user = new User(username, new OutboundQueue(64, OverflowPolicy.DISCONNECT, Long.MAX_VALUE));
+            user.setFrameSink(this);
+        }
+
+        // Fan-out threads may announce frames concurrently; taking them one at a time keeps the queue order
+        @Override
+        public synchronized void framesAvailable() {
+            EncodedFrame frame;
+            while ((frame = user.getOutboundQueue().poll()) != null) {
+                ByteBuffer messages = frame.view();
+                while (messages.hasRemaining()) {
+                    received.add(codec.decode(messages));
+                }
+                frame.release();
+            }
+        }
+
+        @Override
+        public void disconnect() {
+            disconnected = true;
+        }
+
+        List<String> contents() {
+            List<String> contents = new ArrayList<>();
+            for (ChatMessage message : received) {
+                contents.add(message.getContent());
+            }
+            return contents;
+        }
+    }
+
+    static Recorder recorder(String username) {
+        return new Recorder(username);
+    }
+
+    // Waits up to timeoutMillis for the condition, for rooms that deliver on other threads
+    static boolean await(BooleanSupplier condition, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(1);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,8 @@
+package com.chat.storage;
+
+// When the message log forces appended records to stable storage
+public enum FsyncPolicy {
+    EVERY_MESSAGE, // force after every append: nothing acknowledged is lost on a crash
+    GROUP_COMMIT,  // force dirty logs on a fixed interval, bounding loss to that window
+    OS_MANAGED     // leave write-back entirely to the OS page cache
+}
@@ -0,0 +1,108 @@
+package com.chat.storage;
+
+import com.chat.core.MessageLog;
+import com.chat.core.MessageStore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+// Owns the on-disk layout (one directory of segments per room) and the group-commit timer for all room logs
+public class MappedMessageStore implements MessageStore {
+    private static final Logger LOGGER = Logger.getLogger(MappedMessageStore.class.getName());
+    private final Path rootDirectory;
+    private final int segmentBytes;
+    private final FsyncPolicy fsyncPolicy;
+    private final Map<String, SegmentedMessageLog> logs = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService groupCommitTimer;
+
+    public MappedMessageStore(Path rootDirectory, int segmentBytes, FsyncPolicy fsyncPolicy, long groupCommitMillis) {
+        this.rootDirectory = rootDirectory;
+        this.segmentBytes = segmentBytes;
+        this.fsyncPolicy = fsyncPolicy;
+        try {
+            Files.createDirectories(rootDirectory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create message store at " + rootDirectory, e);
+        }
+        if (fsyncPolicy == FsyncPolicy.GROUP_COMMIT) {
+            groupCommitTimer = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "chat-group-commit");
+                thread.setDaemon(true);
+                return thread;
+            });
+            groupCommitTimer.scheduleAtFixedRate(this::flushAll, groupCommitMillis, groupCommitMillis,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            groupCommitTimer = null;
+        }
+    }
+
+    @Override
+    public MessageLog openLog(String roomId) {
+        return logs.computeIfAbsent(roomId, id ->
+                new SegmentedMessageLog(rootDirectory.resolve(directoryName(id)), segmentBytes, fsyncPolicy));
+    }
+
+    @Override
+    public void closeLog(String roomId) {
+        SegmentedMessageLog log = logs.remove(roomId);
+        if (log != null) {
+            log.close();
+        }
+    }
+
+    @Override
+    public void deleteLog(String roomId) {
+        closeLog(roomId);
+        Path directory = rootDirectory.resolve(directoryName(roomId));
+        try (Stream<Path> files = Files.walk(directory)) {
+            // Deepest first, so the directory is empty by the time it is deleted
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        } catch (NoSuchFileException e) {
+            // the room never wrote anything
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot delete message log " + directory, e);
+        }
+    }
+
+    private void flushAll() {
+        for (SegmentedMessageLog log : logs.values()) {
+            try {
+                log.flush();
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Group commit failed", e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (groupCommitTimer != null) {
+            groupCommitTimer.shutdown();
+        }
+        for (SegmentedMessageLog log : logs.values()) {
+            log.close();
+        }
+        logs.clear();
+    }
+
+    // Room ids are user-supplied, so never use them as a raw path component
+    private static String directoryName(String roomId) {
+        return "room-" + URLEncoder.encode(roomId, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,245 @@
+package com.chat.storage;
+
+import com.chat.core.ChatMessage;
+import com.chat.core.MessageCodec;
+import com.chat.core.MessageLog;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Append-only log of a room's messages in memory-mapped segment files named by their first sequence.
+// Each record is [int length][MessageCodec frame]; the length is written last, so a zero length marks the end of
+// valid data both for readers and for recovery after a crash. Reads decode straight out of the mapping.
+public class SegmentedMessageLog implements MessageLog {
+    private static final Logger LOGGER = Logger.getLogger(SegmentedMessageLog.class.getName());
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int LENGTH_PREFIX = Integer.BYTES;
+    private static final MessageCodec CODEC = new MessageCodec();
+    private final Path directory;
+    private final int segmentBytes;
+    private final FsyncPolicy fsyncPolicy;
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    private final Lock appendLock = new ReentrantLock();
+    private volatile long lastSequence;
+    private boolean dirty; // guarded by appendLock
+
+    private static final class Segment {
+        final long baseSequence;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        volatile int writePosition; // published after each record, so readers never see a partial one
+
+        Segment(long baseSequence, FileChannel channel, MappedByteBuffer buffer) {
+            this.baseSequence = baseSequence;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+
+    public SegmentedMessageLog(Path directory, int segmentBytes, FsyncPolicy fsyncPolicy) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.fsyncPolicy = fsyncPolicy;
+        try {
+            Files.createDirectories(directory);
+            recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open message log at " + directory, e);
+        }
+    }
+
+    private void recover() throws IOException {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(file -> file.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            Segment segment = mapSegment(file, Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+            int position = 0;
+            while (position + LENGTH_PREFIX <= segment.buffer.capacity()) {
+                int length = segment.buffer.getInt(position);
+                if (length <= 0 || position + LENGTH_PREFIX + length > segment.buffer.capacity()) {
+                    break;
+                }
+                lastSequence = MessageCodec.peekSequence(segment.buffer, position + LENGTH_PREFIX);
+                position += LENGTH_PREFIX + length;
+            }
+            segment.writePosition = position;
+            segments.add(segment);
+        }
+        if (!segments.isEmpty()) {
+            LOGGER.info("Recovered message log " + directory + " up to sequence " + lastSequence);
+        }
+    }
+
+    @Override
+    public void append(ChatMessage message) {
+        int length = CODEC.encodedLength(message);
+        if (LENGTH_PREFIX + length > segmentBytes) {
+            throw new IllegalArgumentException("Message of " + length + " bytes does not fit a log segment");
+        }
+        appendLock.lock();
+        try {
+            Segment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+            if (segment == null || segment.writePosition + LENGTH_PREFIX + length > segment.buffer.capacity()) {
+                segment = roll(segment, message.getSequence());
+            }
+            // Only the appender moves the mapping's position; readers use absolute offsets or a duplicate
+            MappedByteBuffer buffer = segment.buffer;
+            int start = segment.writePosition;
+            buffer.position(start + LENGTH_PREFIX);
+            CODEC.encode(message, buffer);
+            buffer.putInt(start, length);
+            segment.writePosition = start + LENGTH_PREFIX + length;
+            lastSequence = message.getSequence();
+            if (fsyncPolicy == FsyncPolicy.EVERY_MESSAGE) {
+                buffer.force();
+            } else {
+                dirty = true;
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    @Override
+    public List<ChatMessage> readAfter(long afterSequence, int limit) {
+        Segment[] view = segments.toArray(new Segment[0]);
+        List<ChatMessage> result = new ArrayList<>(Math.max(0, Math.min(limit, 64)));
+        for (int i = segmentIndexFor(view, afterSequence + 1); i < view.length && result.size() < limit; i++) {
+            Segment segment = view[i];
+            ByteBuffer records = segment.buffer.duplicate();
+            int end = segment.writePosition;
+            for (int position = 0; position < end && result.size() < limit; ) {
+                if (MessageCodec.peekSequence(records, position + LENGTH_PREFIX) > afterSequence) {
+                    result.add(decode(records, position + LENGTH_PREFIX));
+                }
+                position += LENGTH_PREFIX + segment.buffer.getInt(position);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<ChatMessage> readBefore(long beforeSequence, int limit) {
+        Segment[] view = segments.toArray(new Segment[0]);
+        ArrayDeque<ChatMessage> window = new ArrayDeque<>();
+        for (int i = segmentIndexFor(view, beforeSequence - 1); i >= 0 && window.size() < limit; i--) {
+            Segment segment = view[i];
+            ByteBuffer records = segment.buffer.duplicate();
+            int wanted = limit - window.size();
+            // Remember only the last `wanted` matching offsets in this segment, then decode just those
+            ArrayDeque<Integer> offsets = new ArrayDeque<>(wanted);
+            int end = segment.writePosition;
+            for (int position = 0; position < end; ) {
+                if (MessageCodec.peekSequence(records, position + LENGTH_PREFIX) < beforeSequence) {
+                    if (offsets.size() == wanted) {
+                        offsets.pollFirst();
+                    }
+                    offsets.addLast(position + LENGTH_PREFIX);
+                }
+                position += LENGTH_PREFIX + segment.buffer.getInt(position);
+            }
+            while (!offsets.isEmpty()) {
+                window.addFirst(decode(records, offsets.pollLast()));
+            }
+        }
+        return new ArrayList<>(window);
+    }
+
+    @Override
+    public long lastSequence() {
+        return lastSequence;
+    }
+
+    @Override
+    public void flush() {
+        appendLock.lock();
+        try {
+            if (dirty && !segments.isEmpty()) {
+                segments.get(segments.size() - 1).buffer.force();
+                dirty = false;
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        appendLock.lock();
+        try {
+            for (Segment segment : segments) {
+                if (fsyncPolicy != FsyncPolicy.OS_MANAGED) {
+                    segment.buffer.force();
+                }
+                segment.channel.close();
+            }
+            segments.clear();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to close message log " + directory, e);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private Segment roll(Segment current, long baseSequence) {
+        if (current != null && fsyncPolicy != FsyncPolicy.OS_MANAGED) {
+            current.buffer.force();
+        }
+        Path file = directory.resolve(String.format("%020d%s", baseSequence, SEGMENT_SUFFIX));
+        try {
+            Segment segment = mapSegment(file, baseSequence);
+            segments.add(segment);
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create log segment " + file, e);
+        }
+    }
+
+    private Segment mapSegment(Path file, long baseSequence) throws IOException {
+        FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = Math.max(channel.size(), segmentBytes);
+        return new Segment(baseSequence, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+    }
+
+    // Index of the last segment whose base is at or below the sequence, or 0 if none is
+    private static int segmentIndexFor(Segment[] view, long sequence) {
+        int low = 0;
+        int high = view.length - 1;
+        int found = 0;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (view[mid].baseSequence <= sequence) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    private static ChatMessage decode(ByteBuffer records, int position) {
+        records.position(position);
+        return CODEC.decode(records);
+    }
+}
@@ -0,0 +1,71 @@
+package com.chat.storage;
+
+import com.chat.core.ChatMessage;
+import com.chat.core.ChatRoom;
+import com.chat.core.ChatRoomManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MappedMessageStoreTest {
+    private Path directory;
+    private ChatRoomManager manager;
+
+    @BeforeEach
+    void start() throws IOException {
+        directory = Files.createTempDirectory("chat-store-test");
+        manager = newManager();
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        manager.shutdown();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    private ChatRoomManager newManager() {
+        ChatRoomManager roomManager = new ChatRoomManager();
+        roomManager.setMessageStore(new MappedMessageStore(directory, 4096, FsyncPolicy.EVERY_MESSAGE, 10));
+        return roomManager;
+    }
+
+    private static void send(ChatRoomManager roomManager, String roomId, String content) {
+        roomManager.broadcast(roomId, new ChatMessage("alice", content, false, null));
+    }
+
+    @Test
+    void roomsResumeTheirHistoryAfterARestart() {
+        send(manager, "lobby", "one");
+        send(manager, "lobby", "two");
+        manager.shutdown();
+        manager = newManager();
+        ChatRoom room = manager.createRoom("lobby");
+        assertEquals(2L, room.getLastSequence());
+        assertEquals(2, room.getMessageHistory(0, 10).size());
+    }
+
+    @Test
+    void removedRoomsComeBackEmpty() {
+        send(manager, "lobby", "one");
+        manager.removeRoom("lobby").join();
+        ChatRoom recreated = manager.createRoom("lobby");
+        assertEquals(0L, recreated.getLastSequence());
+        assertTrue(recreated.getMessageHistory(0, 10).isEmpty());
+        send(manager, "lobby", "fresh");
+        assertEquals("fresh", recreated.getMessageHistory(0, 10).get(0).getContent());
+    }
+}
@@ -0,0 +1,151 @@
+package com.chat.storage;
+
+import com.chat.core.ChatMessage;
+import com.chat.core.MessageCodec;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SegmentedMessageLogTest {
+    // Small enough that a few dozen messages span several segments
+    private static final int SEGMENT_BYTES = 256;
+
+    private Path directory;
+    private SegmentedMessageLog log;
+
+    @BeforeEach
+    void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("chat-log-test");
+    }
+
+    @AfterEach
+    void deleteDirectory() throws IOException {
+        if (log != null) {
+            log.close();
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    private static ChatMessage message(long sequence) {
+        return new ChatMessage("alice", "message " + sequence, false, null, "room", 1_700_000_000_000L + sequence,
+                sequence);
+    }
+
+    private SegmentedMessageLog open() {
+        return new SegmentedMessageLog(directory, SEGMENT_BYTES, FsyncPolicy.OS_MANAGED);
+    }
+
+    private void appendUpTo(long last) {
+        for (long sequence = log.lastSequence() + 1; sequence <= last; sequence++) {
+            log.append(message(sequence));
+        }
+    }
+
+    private static List<Long> sequences(List<ChatMessage> messages) {
+        List<Long> sequences = new ArrayList<>();
+        for (ChatMessage message : messages) {
+            sequences.add(message.getSequence());
+        }
+        return sequences;
+    }
+
+    private static List<Long> range(long first, long last) {
+        List<Long> range = new ArrayList<>();
+        for (long sequence = first; sequence <= last; sequence++) {
+            range.add(sequence);
+        }
+        return range;
+    }
+
+    private long segmentCount() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".log")).count();
+        }
+    }
+
+    @Test
+    void readsBackWhatWasAppended() {
+        log = open();
+        appendUpTo(3);
+        assertEquals(3L, log.lastSequence());
+        List<ChatMessage> read = log.readAfter(0, 10);
+        assertEquals(range(1, 3), sequences(read));
+        assertEquals("message 2", read.get(1).getContent());
+        assertEquals("room", read.get(1).getRoomId());
+        assertEquals(1_700_000_000_002L, read.get(1).getTimestampMillis());
+    }
+
+    @Test
+    void rollsToANewSegmentWhenOneIsFull() throws IOException {
+        log = open();
+        appendUpTo(40);
+        assertTrue(segmentCount() >= 3, "expected several segments, found " + segmentCount());
+        assertEquals(range(1, 40), sequences(log.readAfter(0, 100)));
+    }
+
+    @Test
+    void readsAcrossSegmentBoundaries() {
+        log = open();
+        appendUpTo(40);
+        assertEquals(range(11, 30), sequences(log.readAfter(10, 20)));
+        assertEquals(range(36, 40), sequences(log.readAfter(35, 20)));
+        assertEquals(range(10, 29), sequences(log.readBefore(30, 20)));
+        assertEquals(range(1, 4), sequences(log.readBefore(5, 20)));
+        assertTrue(log.readAfter(40, 10).isEmpty());
+    }
+
+    @Test
+    void recoversAfterReopening() {
+        log = open();
+        appendUpTo(40);
+        log.close();
+        log = open();
+        assertEquals(40L, log.lastSequence());
+        appendUpTo(45);
+        assertEquals(range(1, 45), sequences(log.readAfter(0, 100)));
+    }
+
+    // A crash mid-append leaves record bytes without their length, which is written last; recovery must stop at
+    // the zero length and the next append must overwrite the torn record
+    @Test
+    void recoveryStopsAtATornRecord() throws IOException {
+        log = open();
+        appendUpTo(3);
+        log.close();
+        log = null;
+        MessageCodec codec = new MessageCodec();
+        int end = 0;
+        for (long sequence = 1; sequence <= 3; sequence++) {
+            end += Integer.BYTES + codec.encodedLength(message(sequence));
+        }
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.filter(file -> file.toString().endsWith(".log")).findFirst().orElseThrow();
+        }
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {2, 9, 9, 9, 9, 9, 9}), end + Integer.BYTES);
+        }
+
+        log = open();
+        assertEquals(3L, log.lastSequence());
+        appendUpTo(5);
+        assertEquals(range(1, 5), sequences(log.readAfter(0, 10)));
+    }
+}
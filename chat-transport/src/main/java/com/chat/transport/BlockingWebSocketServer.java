@@ -0,0 +1,387 @@
+package com.chat.transport;
+
+import com.chat.core.ChatApplication;
+import com.chat.core.ChatMessage;
+import com.chat.core.EncodedFrame;
+import com.chat.core.FrameSink;
+import com.chat.core.MessageCodec;
+import com.chat.core.OutboundQueue;
+import com.chat.core.User;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Thread-per-connection WebSocket server with plain blocking socket I/O. Each connection has a reader task
+// and a writer task on the supplied executor, which may be a platform-thread pool or virtual threads.
+public class BlockingWebSocketServer implements WebSocketServer {
+    private static final Logger LOGGER = Logger.getLogger(BlockingWebSocketServer.class.getName());
+    private final InetSocketAddress bindAddress;
+    private final long pingIntervalMillis;
+    private final ExecutorService connectionExecutor;
+    private final MessageCodec codec = new MessageCodec();
+    private final Queue<ChatMessage> inbound = new ArrayBlockingQueue<>(1024);
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private ChatApplication application;
+    private ServerSocket serverSocket;
+    private Thread acceptorThread;
+    private volatile boolean running;
+
+    public BlockingWebSocketServer(InetSocketAddress bindAddress, long pingIntervalMillis,
+                                   ExecutorService connectionExecutor) {
+        this.bindAddress = bindAddress;
+        this.pingIntervalMillis = pingIntervalMillis;
+        this.connectionExecutor = connectionExecutor;
+    }
+
+    @Override
+    public void start(ChatApplication application) {
+        this.application = application;
+        try {
+            serverSocket = new ServerSocket();
+            serverSocket.bind(bindAddress);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot start WebSocket server on " + bindAddress, e);
+        }
+        running = true;
+        acceptorThread = new Thread(this::acceptLoop, "chat-websocket-acceptor");
+        acceptorThread.setDaemon(true);
+        acceptorThread.start();
+        LOGGER.info("WebSocket server listening on port " + getPort());
+    }
+
+    @Override
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public ChatMessage pollInbound() {
+        return inbound.poll();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to close WebSocket server", e);
+        }
+        for (Connection connection : connections) {
+            connection.close();
+        }
+        connectionExecutor.shutdown();
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Connection connection = new Connection(socket);
+                connections.add(connection);
+                try {
+                    connectionExecutor.execute(connection::readLoop);
+                } catch (RejectedExecutionException e) {
+                    LOGGER.warning("No connection threads available; refusing WebSocket client");
+                    connection.close();
+                }
+            } catch (IOException e) {
+                if (running) {
+                    LOGGER.log(Level.WARNING, "WebSocket accept failed", e);
+                }
+            }
+        }
+    }
+
+    private final class Connection implements FrameSink {
+        final Socket socket;
+        final Lock writeLock = new ReentrantLock(); // reader (control frames) and writer share the stream
+        final byte[] header = new byte[10];
+        byte[] scratch = new byte[1024];
+        volatile Thread writer;
+        volatile boolean framesPending; // remembers a wake-up that came before the writer started or parked
+        volatile boolean closed;
+        DataInputStream in;
+        OutputStream out;
+        User user;
+
+        Connection(Socket socket) {
+            this.socket = socket;
+        }
+
+        @Override
+        public void framesAvailable() {
+            framesPending = true;
+            Thread thread = writer;
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        // Closing the socket, rather than writing a close frame, cannot block the fan-out thread
+        @Override
+        public void disconnect() {
+            close();
+        }
+
+        void readLoop() {
+            try {
+                socket.setSoTimeout((int) pingIntervalMillis);
+                in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                out = new BufferedOutputStream(socket.getOutputStream());
+                if (!handshake()) {
+                    return;
+                }
+                try {
+                    connectionExecutor.execute(this::writeLoop);
+                } catch (RejectedExecutionException e) {
+                    LOGGER.warning("No writer thread available; closing WebSocket connection for "
+                            + user.getUsername());
+                    sendClose(WebSocketProtocol.CLOSE_TRY_AGAIN_LATER);
+                    return;
+                }
+                ByteArrayOutputStream fragments = null;
+                int fragmentOpcode = 0;
+                boolean pingOutstanding = false;
+                while (!closed) {
+                    int first;
+                    try {
+                        first = in.read();
+                    } catch (SocketTimeoutException e) {
+                        if (pingOutstanding) {
+                            LOGGER.info("Closing unresponsive WebSocket connection for " + user.getUsername());
+                            return;
+                        }
+                        pingOutstanding = true;
+                        writeControl(WebSocketProtocol.OPCODE_PING, new byte[0]);
+                        continue;
+                    }
+                    if (first < 0) {
+                        return;
+                    }
+                    pingOutstanding = false;
+                    int second = in.readUnsignedByte();
+                    boolean fin = (first & 0x80) != 0;
+                    int opcode = first & 0x0F;
+                    long length = second & 0x7F;
+                    if (length == 126) {
+                        length = in.readUnsignedShort();
+                    } else if (length == 127) {
+                        length = in.readLong();
+                    }
+                    if ((first & 0x70) != 0 || (second & 0x80) == 0) {
+                        sendClose(WebSocketProtocol.CLOSE_PROTOCOL_ERROR); // reserved bits set or unmasked frame
+                        return;
+                    }
+                    if (length < 0 || length > WebSocketProtocol.MAX_MESSAGE_BYTES) {
+                        sendClose(WebSocketProtocol.CLOSE_TOO_BIG);
+                        return;
+                    }
+                    byte[] mask = new byte[4];
+                    in.readFully(mask);
+                    byte[] payload = new byte[(int) length];
+                    in.readFully(payload);
+                    for (int i = 0; i < payload.length; i++) {
+                        payload[i] ^= mask[i & 3];
+                    }
+                    if (opcode >= WebSocketProtocol.OPCODE_CLOSE) {
+                        if (!fin || payload.length > 125) {
+                            sendClose(WebSocketProtocol.CLOSE_PROTOCOL_ERROR);
+                            return;
+                        } else if (opcode == WebSocketProtocol.OPCODE_PING) {
+                            writeControl(WebSocketProtocol.OPCODE_PONG, payload);
+                        } else if (opcode == WebSocketProtocol.OPCODE_CLOSE) {
+                            writeControl(WebSocketProtocol.OPCODE_CLOSE,
+                                    payload.length >= 2 ? Arrays.copyOf(payload, 2) : payload);
+                            return;
+                        } else if (opcode != WebSocketProtocol.OPCODE_PONG) {
+                            sendClose(WebSocketProtocol.CLOSE_PROTOCOL_ERROR);
+                            return;
+                        }
+                    } else if (opcode == WebSocketProtocol.OPCODE_CONTINUATION) {
+                        if (fragments == null) {
+                            sendClose(WebSocketProtocol.CLOSE_PROTOCOL_ERROR);
+                            return;
+                        }
+                        fragments.writeBytes(payload);
+                        if (fragments.size() > WebSocketProtocol.MAX_MESSAGE_BYTES) {
+                            sendClose(WebSocketProtocol.CLOSE_TOO_BIG);
+                            return;
+                        }
+                        if (fin) {
+                            byte[] message = fragments.toByteArray();
+                            fragments = null;
+                            if (!onMessage(fragmentOpcode, message)) {
+                                return;
+                            }
+                        }
+                    } else if (opcode == WebSocketProtocol.OPCODE_TEXT || opcode == WebSocketProtocol.OPCODE_BINARY) {
+                        if (fragments != null) {
+                            sendClose(WebSocketProtocol.CLOSE_PROTOCOL_ERROR);
+                            return;
+                        }
+                        if (!fin) {
+                            fragments = new ByteArrayOutputStream();
+                            fragments.writeBytes(payload);
+                            fragmentOpcode = opcode;
+                        } else if (!onMessage(opcode, payload)) {
+                            return;
+                        }
+                    } else {
+                        sendClose(WebSocketProtocol.CLOSE_PROTOCOL_ERROR);
+                        return;
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "WebSocket connection ended", e);
+            } finally {
+                close();
+            }
+        }
+
+        private boolean handshake() throws IOException {
+            ByteArrayOutputStream head = new ByteArrayOutputStream();
+            int matched = 0;
+            while (matched < 4) {
+                int b = in.read();
+                if (b < 0) {
+                    return false;
+                }
+                head.write(b);
+                matched = (b == (matched % 2 == 0 ? '\r' : '\n')) ? matched + 1 : (b == '\r' ? 1 : 0);
+                if (head.size() > WebSocketProtocol.MAX_HANDSHAKE_BYTES) {
+                    out.write(WebSocketProtocol.rejectResponse("431 Request Header Fields Too Large"));
+                    out.flush();
+                    return false;
+                }
+            }
+            WebSocketProtocol.Handshake handshake = WebSocketProtocol.parseHandshake(head.toByteArray());
+            if (handshake == null) {
+                out.write(WebSocketProtocol.rejectResponse("400 Bad Request"));
+                out.flush();
+                return false;
+            }
+            out.write(WebSocketProtocol.acceptResponse(handshake));
+            out.flush();
+            user = application.createUser(handshake.user, this);
+            application.createOrJoinRoom(user, handshake.room);
+            return true;
+        }
+
+        private boolean onMessage(int opcode, byte[] payload) {
+            if (!WebSocketProtocol.dispatch(application, user, opcode, payload, codec, inbound)) {
+                sendClose(WebSocketProtocol.CLOSE_INVALID_PAYLOAD);
+                return false;
+            }
+            return true;
+        }
+
+        // Drains the user's outbound queue, flushing only when it runs dry so bursts share one syscall
+        void writeLoop() {
+            writer = Thread.currentThread();
+            OutboundQueue outbound = user.getOutboundQueue();
+            try {
+                while (!closed) {
+                    framesPending = false;
+                    EncodedFrame frame = outbound.poll();
+                    if (frame == null) {
+                        if (!framesPending) {
+                            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(pingIntervalMillis));
+                        }
+                        continue;
+                    }
+                    writeLock.lock();
+                    try {
+                        do {
+                            writeFrame(frame);
+                        } while ((frame = outbound.poll()) != null);
+                        out.flush();
+                    } finally {
+                        writeLock.unlock();
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "WebSocket write failed", e);
+                close();
+            }
+        }
+
+        private void writeFrame(EncodedFrame frame) throws IOException {
+            try {
+                int length = frame.length();
+                ByteBuffer headerBuffer = ByteBuffer.wrap(header);
+                WebSocketProtocol.putFrameHeader(headerBuffer, WebSocketProtocol.OPCODE_BINARY, length);
+                out.write(header, 0, headerBuffer.position());
+                if (scratch.length < length) {
+                    scratch = new byte[Math.max(length, scratch.length * 2)];
+                }
+                frame.view().get(scratch, 0, length);
+                out.write(scratch, 0, length);
+            } finally {
+                frame.release();
+            }
+        }
+
+        private void writeControl(int opcode, byte[] payload) throws IOException {
+            ByteBuffer frame = ByteBuffer.allocate(2 + payload.length);
+            WebSocketProtocol.putFrameHeader(frame, opcode, payload.length);
+            frame.put(payload);
+            writeLock.lock();
+            try {
+                out.write(frame.array());
+                out.flush();
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+        private void sendClose(int closeCode) {
+            try {
+                writeControl(WebSocketProtocol.OPCODE_CLOSE, WebSocketProtocol.closePayload(closeCode));
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Could not send WebSocket close frame", e);
+            }
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            connections.remove(this);
+            try {
+                socket.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Error closing WebSocket socket", e);
+            }
+            if (user != null) {
+                application.disconnectUser(user);
+                user.setFrameSink(null);
+                user.getOutboundQueue().clear();
+            }
+            framesAvailable(); // let the writer observe the close
+        }
+    }
+}
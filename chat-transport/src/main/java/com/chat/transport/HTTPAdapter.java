@@ -0,0 +1,24 @@
+package com.chat.transport;
+
+import com.chat.core.ChatMessage;
+import com.chat.core.CommunicationAdapter;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class HTTPAdapter implements CommunicationAdapter {
+    private static final Logger LOGGER = Logger.getLogger(HTTPAdapter.class.getName());
+
+    @Override
+    public void sendMessage(ChatMessage message) {
+        // In a real application, this would send the message via HTTP
+        LOGGER.log(Level.INFO, "Sending via HTTP: {0}", message);
+    }
+
+    @Override
+    public ChatMessage receiveMessage() {
+        // In a real application, this would receive a message via HTTP
+        LOGGER.info("Received message via HTTP");
+        return null; // Placeholder
+    }
+}
@@ -0,0 +1,561 @@
+package com.chat.transport;
+
+import com.chat.core.ChatApplication;
+import com.chat.core.ChatMessage;
+import com.chat.core.EncodedFrame;
+import com.chat.core.FrameSink;
+import com.chat.core.MessageCodec;
+import com.chat.core.OutboundQueue;
+import com.chat.core.User;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Non-blocking WebSocket server driven by a single selector thread; see WebSocketProtocol for the wire protocol
+public class NioWebSocketServer implements WebSocketServer {
+    private static final Logger LOGGER = Logger.getLogger(NioWebSocketServer.class.getName());
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+    private final InetSocketAddress bindAddress;
+    private final long pingIntervalMillis;
+    private final MessageCodec codec = new MessageCodec();
+    private final Queue<ChatMessage> inbound = new ArrayBlockingQueue<>(1024);
+    private final Queue<Connection> pendingWrites = new ConcurrentLinkedQueue<>();
+    private ChatApplication application;
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread selectorThread;
+    private ExecutorService inboundWorker; // joins, which may open or rehydrate a room, run here in arrival order
+    private volatile boolean running;
+
+    public NioWebSocketServer(InetSocketAddress bindAddress, long pingIntervalMillis) {
+        this.bindAddress = bindAddress;
+        this.pingIntervalMillis = pingIntervalMillis;
+    }
+
+    @Override
+    public void start(ChatApplication application) {
+        this.application = application;
+        try {
+            selector = Selector.open();
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.configureBlocking(false);
+            serverChannel.bind(bindAddress);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot start WebSocket server on " + bindAddress, e);
+        }
+        inboundWorker = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(() -> {
+                ChatApplication.refuseSendDelaysOnCurrentThread();
+                task.run();
+            }, "chat-websocket-inbound");
+            thread.setDaemon(true);
+            return thread;
+        });
+        running = true;
+        selectorThread = new Thread(this::runSelector, "chat-websocket-selector");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+        LOGGER.info("WebSocket server listening on port " + getPort());
+    }
+
+    @Override
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    @Override
+    public ChatMessage pollInbound() {
+        return inbound.poll();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        if (selector != null) {
+            selector.wakeup();
+        }
+        if (selectorThread != null) {
+            try {
+                selectorThread.join(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (inboundWorker != null) {
+            inboundWorker.shutdown();
+        }
+    }
+
+    private void runSelector() {
+        ChatApplication.refuseSendDelaysOnCurrentThread();
+        long nextIdleCheck = System.currentTimeMillis() + pingIntervalMillis;
+        while (running) {
+            try {
+                selector.select(Math.max(100, pingIntervalMillis / 2));
+                registerPendingWrites();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isValid() && key.isAcceptable()) {
+                        accept();
+                    } else if (key.isValid()) {
+                        handle(key, (Connection) key.attachment());
+                    }
+                }
+                long now = System.currentTimeMillis();
+                if (now >= nextIdleCheck) {
+                    checkIdleConnections(now);
+                    nextIdleCheck = now + pingIntervalMillis / 2;
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "WebSocket selector loop failed", e);
+            }
+        }
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof Connection) {
+                ((Connection) key.attachment()).close();
+            }
+        }
+        try {
+            serverChannel.close();
+            selector.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to close WebSocket server", e);
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        key.attach(new Connection(channel, key));
+    }
+
+    private void handle(SelectionKey key, Connection connection) {
+        try {
+            if (key.isReadable()) {
+                connection.onReadable();
+            }
+            if (key.isValid() && key.isWritable()) {
+                connection.onWritable();
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.FINE, "Closing WebSocket connection after error", e);
+            connection.close();
+        }
+    }
+
+    // Fan-out threads and the inbound worker only enqueue; interest ops are changed here, on the selector thread
+    private void registerPendingWrites() {
+        Connection connection;
+        while ((connection = pendingWrites.poll()) != null) {
+            connection.writeRequested.set(false);
+            if (connection.slowConsumer || connection.joinFailed) {
+                connection.close();
+            } else if (connection.key.isValid()) {
+                try {
+                    connection.resumeAfterJoin();
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.FINE, "Closing WebSocket connection after error", e);
+                    connection.close();
+                    continue;
+                }
+                connection.key.interestOps(connection.key.interestOps() | SelectionKey.OP_WRITE);
+            }
+        }
+    }
+
+    private void checkIdleConnections(long now) {
+        for (SelectionKey key : selector.keys()) {
+            if (!(key.attachment() instanceof Connection)) {
+                continue;
+            }
+            Connection connection = (Connection) key.attachment();
+            if (!connection.handshakeDone) {
+                // One ping interval to finish the handshake, however slowly the client trickles its head in
+                if (now - connection.acceptedAt > pingIntervalMillis) {
+                    connection.close();
+                }
+                continue;
+            }
+            long idle = now - connection.lastHeard;
+            if (idle > 2 * pingIntervalMillis) {
+                User user = connection.user;
+                LOGGER.info("Closing unresponsive WebSocket connection for "
+                        + (user != null ? user.getUsername() : ""));
+                connection.close();
+            } else if (idle > pingIntervalMillis && !connection.pingOutstanding) {
+                connection.pingOutstanding = true;
+                connection.sendControl(WebSocketProtocol.OPCODE_PING, new byte[0]);
+            }
+        }
+    }
+
+    private final class Connection implements FrameSink {
+        final SocketChannel channel;
+        final SelectionKey key;
+        final ByteBuffer in = ByteBuffer.allocate(WebSocketProtocol.MAX_MESSAGE_BYTES + 14);
+        final Queue<ByteBuffer> control = new ArrayDeque<>(); // selector thread only
+        final AtomicBoolean writeRequested = new AtomicBoolean();
+        final ByteBuffer header = ByteBuffer.allocate(10);
+        final ByteBuffer[] vector = {EMPTY, EMPTY};
+        final long acceptedAt = System.currentTimeMillis();
+        volatile boolean slowConsumer;
+        volatile boolean closed;
+        volatile boolean joining; // a join is running on the inbound worker; reading waits for it
+        volatile boolean joinFailed;
+        volatile User user;
+        EncodedFrame inFlight;
+        ByteArrayOutputStream fragments;
+        int fragmentOpcode;
+        boolean handshakeDone;
+        boolean closeAfterFlush;
+        boolean pingOutstanding;
+        boolean joinPending; // selector thread's view of joining, cleared once it has resumed reading
+        long lastHeard = System.currentTimeMillis();
+
+        Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+
+        @Override
+        public void framesAvailable() {
+            if (!closed) {
+                requestWrite();
+            }
+        }
+
+        @Override
+        public void disconnect() {
+            slowConsumer = true;
+            requestWrite();
+        }
+
+        private void requestWrite() {
+            if (writeRequested.compareAndSet(false, true)) {
+                pendingWrites.add(this);
+                selector.wakeup();
+            }
+        }
+
+        void onReadable() throws IOException {
+            if (channel.read(in) < 0) {
+                close();
+                return;
+            }
+            lastHeard = System.currentTimeMillis();
+            pingOutstanding = false;
+            if (!handshakeDone) {
+                readHandshake();
+            } else {
+                readFrames();
+            }
+            // Backpressure: a client that is not draining its output does not get to send more
+            if (user != null && backlogged(2) && key.isValid()) {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            }
+        }
+
+        void onWritable() throws IOException {
+            while (true) {
+                if (!vector[0].hasRemaining() && !vector[1].hasRemaining()) {
+                    finishInFlight();
+                    if (!prepareNext()) {
+                        break;
+                    }
+                }
+                channel.write(vector);
+                if (vector[0].hasRemaining() || vector[1].hasRemaining()) {
+                    return; // socket buffer full; stay interested in OP_WRITE
+                }
+            }
+            if (closeAfterFlush) {
+                close();
+                return;
+            }
+            int ops = key.interestOps() & ~SelectionKey.OP_WRITE;
+            if (!joinPending && (user == null || !backlogged(4))) {
+                ops |= SelectionKey.OP_READ;
+            }
+            key.interestOps(ops);
+        }
+
+        private boolean prepareNext() {
+            ByteBuffer next = control.poll();
+            if (next != null) {
+                vector[0] = next;
+                vector[1] = EMPTY;
+                return true;
+            }
+            if (closeAfterFlush) {
+                return false;
+            }
+            EncodedFrame frame = user != null ? user.getOutboundQueue().poll() : null;
+            if (frame == null) {
+                return false;
+            }
+            inFlight = frame;
+            header.clear();
+            WebSocketProtocol.putFrameHeader(header, WebSocketProtocol.OPCODE_BINARY, frame.length());
+            header.flip();
+            vector[0] = header;
+            vector[1] = frame.view();
+            return true;
+        }
+
+        private void finishInFlight() {
+            if (inFlight != null) {
+                inFlight.release();
+                inFlight = null;
+            }
+        }
+
+        // More than 1/fraction of the outbound queue is waiting
+        private boolean backlogged(int fraction) {
+            OutboundQueue outbound = user.getOutboundQueue();
+            return outbound.depth() > outbound.capacity() / fraction;
+        }
+
+        private void readHandshake() throws IOException {
+            int end = headerEnd(in);
+            if (end < 0) {
+                if (in.position() >= WebSocketProtocol.MAX_HANDSHAKE_BYTES) {
+                    rejectHandshake("431 Request Header Fields Too Large");
+                }
+                return;
+            }
+            in.flip();
+            byte[] head = new byte[end];
+            in.get(head);
+            in.compact();
+            WebSocketProtocol.Handshake handshake = WebSocketProtocol.parseHandshake(head);
+            if (handshake == null) {
+                rejectHandshake("400 Bad Request");
+                return;
+            }
+            queueControl(ByteBuffer.wrap(WebSocketProtocol.acceptResponse(handshake)));
+            handshakeDone = true;
+            startJoin(() -> {
+                user = application.createUser(handshake.user, this);
+                application.createOrJoinRoom(user, handshake.room);
+            });
+        }
+
+        // Frames behind a join stay buffered, unread, until the worker has finished it
+        private void startJoin(Runnable join) {
+            joining = true;
+            joinPending = true;
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            inboundWorker.execute(() -> {
+                try {
+                    join.run();
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.FINE, "Closing WebSocket connection after a failed join", e);
+                    joinFailed = true;
+                }
+                joining = false;
+                requestWrite();
+            });
+        }
+
+        void resumeAfterJoin() {
+            if (joinPending && !joining) {
+                joinPending = false;
+                if (in.position() > 0) {
+                    readFrames();
+                }
+            }
+        }
+
+        private void rejectHandshake(String status) {
+            queueControl(ByteBuffer.wrap(WebSocketProtocol.rejectResponse(status)));
+            closeAfterFlush = true;
+            key.interestOps(SelectionKey.OP_WRITE);
+        }
+
+        private void readFrames() {
+            in.flip();
+            while (in.remaining() >= 2 && !closeAfterFlush && !joinPending) {
+                int start = in.position();
+                int first = in.get(start) & 0xFF;
+                int second = in.get(start + 1) & 0xFF;
+                boolean fin = (first & 0x80) != 0;
+                int opcode = first & 0x0F;
+                long length = second & 0x7F;
+                int headerLength = 2;
+                if (length == 126) {
+                    if (in.remaining() < 4) {
+                        break;
+                    }
+                    length = in.getShort(start + 2) & 0xFFFF;
+                    headerLength = 4;
+                } else if (length == 127) {
+                    if (in.remaining() < 10) {
+                        break;
+                    }
+                    length = in.getLong(start + 2);
+                    headerLength = 10;
+                }
+                if ((first & 0x70) != 0 || (second & 0x80) == 0) {
+                    fail(WebSocketProtocol.CLOSE_PROTOCOL_ERROR); // reserved bits set or unmasked client frame
+                    break;
+                }
+                if (length < 0 || length > WebSocketProtocol.MAX_MESSAGE_BYTES) {
+                    fail(WebSocketProtocol.CLOSE_TOO_BIG);
+                    break;
+                }
+                int maskOffset = start + headerLength;
+                if (in.remaining() < headerLength + 4 + length) {
+                    break;
+                }
+                byte[] payload = new byte[(int) length];
+                for (int i = 0; i < payload.length; i++) {
+                    payload[i] = (byte) (in.get(maskOffset + 4 + i) ^ in.get(maskOffset + (i & 3)));
+                }
+                in.position(maskOffset + 4 + payload.length);
+                onFrame(fin, opcode, payload);
+            }
+            in.compact();
+        }
+
+        private void onFrame(boolean fin, int opcode, byte[] payload) {
+            if (opcode >= WebSocketProtocol.OPCODE_CLOSE) {
+                if (!fin || payload.length > 125) {
+                    fail(WebSocketProtocol.CLOSE_PROTOCOL_ERROR);
+                } else if (opcode == WebSocketProtocol.OPCODE_PING) {
+                    sendControl(WebSocketProtocol.OPCODE_PONG, payload);
+                } else if (opcode == WebSocketProtocol.OPCODE_CLOSE) {
+                    sendControl(WebSocketProtocol.OPCODE_CLOSE, payload.length >= 2 ? Arrays.copyOf(payload, 2) : payload);
+                    closeAfterFlush = true;
+                } else if (opcode != WebSocketProtocol.OPCODE_PONG) {
+                    fail(WebSocketProtocol.CLOSE_PROTOCOL_ERROR);
+                }
+                return;
+            }
+            if (opcode == WebSocketProtocol.OPCODE_CONTINUATION) {
+                if (fragments == null) {
+                    fail(WebSocketProtocol.CLOSE_PROTOCOL_ERROR);
+                    return;
+                }
+                fragments.writeBytes(payload);
+                if (fragments.size() > WebSocketProtocol.MAX_MESSAGE_BYTES) {
+                    fail(WebSocketProtocol.CLOSE_TOO_BIG);
+                } else if (fin) {
+                    byte[] message = fragments.toByteArray();
+                    fragments = null;
+                    onMessage(fragmentOpcode, message);
+                }
+            } else if (opcode == WebSocketProtocol.OPCODE_TEXT || opcode == WebSocketProtocol.OPCODE_BINARY) {
+                if (fragments != null) {
+                    fail(WebSocketProtocol.CLOSE_PROTOCOL_ERROR);
+                } else if (fin) {
+                    onMessage(opcode, payload);
+                } else {
+                    fragments = new ByteArrayOutputStream();
+                    fragments.writeBytes(payload);
+                    fragmentOpcode = opcode;
+                }
+            } else {
+                fail(WebSocketProtocol.CLOSE_PROTOCOL_ERROR);
+            }
+        }
+
+        private void onMessage(int opcode, byte[] payload) {
+            if (WebSocketProtocol.isJoin(opcode, payload)) {
+                startJoin(() -> WebSocketProtocol.dispatch(application, user, opcode, payload, codec, inbound));
+                return;
+            }
+            if (!WebSocketProtocol.dispatch(application, user, opcode, payload, codec, inbound)) {
+                fail(WebSocketProtocol.CLOSE_INVALID_PAYLOAD);
+            }
+        }
+
+        private void fail(int closeCode) {
+            sendControl(WebSocketProtocol.OPCODE_CLOSE, WebSocketProtocol.closePayload(closeCode));
+            closeAfterFlush = true;
+        }
+
+        void sendControl(int opcode, byte[] payload) {
+            ByteBuffer frame = ByteBuffer.allocate(2 + payload.length);
+            WebSocketProtocol.putFrameHeader(frame, opcode, payload.length);
+            frame.put(payload);
+            frame.flip();
+            queueControl(frame);
+        }
+
+        private void queueControl(ByteBuffer frame) {
+            control.add(frame);
+            if (key.isValid()) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            }
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (slowConsumer) {
+                LOGGER.warning("Disconnecting slow WebSocket consumer " + (user != null ? user.getUsername() : ""));
+            }
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Error closing WebSocket channel", e);
+            }
+            if (joinPending) {
+                inboundWorker.execute(this::releaseUser); // after the join, which may still be creating the user
+            } else {
+                releaseUser();
+            }
+            if (inFlight != null) {
+                inFlight.release();
+                inFlight = null;
+            }
+        }
+
+        private void releaseUser() {
+            User user = this.user;
+            if (user != null) {
+                application.disconnectUser(user);
+                user.setFrameSink(null);
+                user.getOutboundQueue().clear();
+            }
+        }
+    }
+
+    // Length of the HTTP head including the blank line, or -1 if it has not fully arrived
+    private static int headerEnd(ByteBuffer buffer) {
+        for (int i = 3; i < buffer.position(); i++) {
+            if (buffer.get(i - 3) == '\r' && buffer.get(i - 2) == '\n'
+                    && buffer.get(i - 1) == '\r' && buffer.get(i) == '\n') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,8 @@
+package com.chat.transport;
+
+// Which connection model serves WebSocket clients; chosen once at startup
+public enum TransportMode {
+    NIO_SELECTOR,     // one selector thread multiplexing every connection
+    PLATFORM_THREADS, // blocking I/O, reader and writer per connection on a bounded platform-thread pool
+    VIRTUAL_THREADS   // blocking I/O, reader and writer per connection on virtual threads (Java 21+)
+}
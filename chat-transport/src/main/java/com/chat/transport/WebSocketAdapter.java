@@ -0,0 +1,54 @@
+package com.chat.transport;
+
+import com.chat.core.ChatApplication;
+import com.chat.core.ChatMessage;
+import com.chat.core.CommunicationAdapter;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class WebSocketAdapter implements CommunicationAdapter {
+    private static final Logger LOGGER = Logger.getLogger(WebSocketAdapter.class.getName());
+    private final WebSocketServer server; // null: log-only stand-in with no network I/O
+
+    public WebSocketAdapter() {
+        this(null);
+    }
+
+    public WebSocketAdapter(WebSocketServer server) {
+        this.server = server;
+    }
+
+    @Override
+    public void sendMessage(ChatMessage message) {
+        if (server == null) {
+            // In a real application, this would send the message via WebSocket
+            LOGGER.log(Level.INFO, "Sending via WebSocket: {0}", message);
+            return;
+        }
+        // Connected clients already received it through their room's fan-out
+        LOGGER.log(Level.FINE, "Delivered via WebSocket room fan-out: {0}", message);
+    }
+
+    @Override
+    public ChatMessage receiveMessage() {
+        if (server == null) {
+            // In a real application, this would receive a message via WebSocket
+            LOGGER.info("Received message via WebSocket");
+            return null; // Placeholder
+        }
+        return server.pollInbound();
+    }
+
+    public void start(ChatApplication application) {
+        if (server != null) {
+            server.start(application);
+        }
+    }
+
+    public void close() {
+        if (server != null) {
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.chat.transport;
+
+import com.chat.core.ChatApplication;
+import com.chat.core.ChatMessage;
+import com.chat.core.MessageCodec;
+import com.chat.core.User;
+
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+// RFC 6455 pieces shared by both server models. Clients connect to ws://host:port/?user=<name>&room=<roomId>.
+// Text frames are chat messages for the room joined last ("/msg <user> <text>" sends a private one, "/join <room>"
+// and "/leave <room>" change subscriptions) and binary frames are MessageCodec frames, sent to the frame's room
+// if it names one. Every subscribed room's broadcasts go back out as binary frames tagged with their room; with
+// DeliveryMode.BATCHED one binary frame may hold several MessageCodec messages back to back.
+final class WebSocketProtocol {
+    static final int MAX_HANDSHAKE_BYTES = 8 * 1024;
+    static final int MAX_MESSAGE_BYTES = 64 * 1024;
+    static final int OPCODE_CONTINUATION = 0x0;
+    static final int OPCODE_TEXT = 0x1;
+    static final int OPCODE_BINARY = 0x2;
+    static final int OPCODE_CLOSE = 0x8;
+    static final int OPCODE_PING = 0x9;
+    static final int OPCODE_PONG = 0xA;
+    static final int CLOSE_PROTOCOL_ERROR = 1002;
+    static final int CLOSE_INVALID_PAYLOAD = 1007;
+    static final int CLOSE_TOO_BIG = 1009;
+    static final int CLOSE_TRY_AGAIN_LATER = 1013;
+    private static final String WEBSOCKET_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+    private WebSocketProtocol() {
+    }
+
+    // A validated upgrade request
+    static final class Handshake {
+        final String user;
+        final String room;
+        final String clientKey;
+
+        Handshake(String user, String room, String clientKey) {
+            this.user = user;
+            this.room = room;
+            this.clientKey = clientKey;
+        }
+    }
+
+    // Parses the HTTP head up to and including the blank line; null unless it is a valid chat upgrade
+    static Handshake parseHandshake(byte[] head) {
+        String[] lines = new String(head, StandardCharsets.ISO_8859_1).split("\r\n");
+        String[] requestLine = lines[0].split(" ");
+        Map<String, String> headers = new HashMap<>();
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            if (colon > 0) {
+                headers.put(lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT),
+                        lines[i].substring(colon + 1).trim());
+            }
+        }
+        Map<String, String> query = requestLine.length == 3 ? parseQuery(requestLine[1]) : Map.of();
+        String clientKey = headers.get("sec-websocket-key");
+        if (!"GET".equals(requestLine[0])
+                || !"websocket".equalsIgnoreCase(headers.get("upgrade"))
+                || !headers.getOrDefault("connection", "").toLowerCase(Locale.ROOT).contains("upgrade")
+                || !"13".equals(headers.get("sec-websocket-version"))
+                || clientKey == null || query.get("user") == null || query.get("room") == null) {
+            return null;
+        }
+        return new Handshake(query.get("user"), query.get("room"), clientKey);
+    }
+
+    static byte[] acceptResponse(Handshake handshake) {
+        return ("HTTP/1.1 101 Switching Protocols\r\n"
+                + "Upgrade: websocket\r\n"
+                + "Connection: Upgrade\r\n"
+                + "Sec-WebSocket-Accept: " + acceptKey(handshake.clientKey) + "\r\n\r\n")
+                .getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    static byte[] rejectResponse(String status) {
+        return ("HTTP/1.1 " + status + "\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    static byte[] closePayload(int closeCode) {
+        return new byte[] {(byte) (closeCode >> 8), (byte) closeCode};
+    }
+
+    // Server frames are never masked
+    static void putFrameHeader(ByteBuffer buffer, int opcode, int length) {
+        buffer.put((byte) (0x80 | opcode));
+        if (length < 126) {
+            buffer.put((byte) length);
+        } else if (length <= 0xFFFF) {
+            buffer.put((byte) 126);
+            buffer.putShort((short) length);
+        } else {
+            buffer.put((byte) 127);
+            buffer.putLong(length);
+        }
+    }
+
+    // A text "/join <room>" command, which may open or rehydrate the room and so can take a while
+    static boolean isJoin(int opcode, byte[] payload) {
+        return opcode == OPCODE_TEXT && new String(payload, StandardCharsets.UTF_8).startsWith("/join ");
+    }
+
+    // Sends a complete text or binary message as user; false if the payload is malformed
+    static boolean dispatch(ChatApplication application, User user, int opcode, byte[] payload,
+                            MessageCodec codec, Queue<ChatMessage> inbound) {
+        String content;
+        String recipient = null;
+        String roomId = null;
+        if (opcode == OPCODE_TEXT) {
+            content = new String(payload, StandardCharsets.UTF_8);
+            if (content.startsWith("/join ")) {
+                application.createOrJoinRoom(user, content.substring(6).trim());
+                return true;
+            } else if (content.startsWith("/leave ")) {
+                application.leaveRoom(user, content.substring(7).trim());
+                return true;
+            } else if (content.startsWith("/msg ")) {
+                int space = content.indexOf(' ', 5);
+                if (space < 0) {
+                    return true; // nothing to send
+                }
+                recipient = content.substring(5, space);
+                content = content.substring(space + 1);
+            }
+        } else {
+            try {
+                ChatMessage decoded = codec.decode(ByteBuffer.wrap(payload));
+                content = decoded.getContent();
+                recipient = decoded.isPrivate() ? decoded.getRecipient() : null;
+                roomId = decoded.getRoomId();
+            } catch (RuntimeException e) {
+                return false;
+            }
+        }
+        // The sender is always the connection's own user, whatever the frame claims
+        inbound.offer(new ChatMessage(user.getUsername(), content, recipient != null, recipient));
+        if (recipient != null) {
+            application.sendPrivateMessage(user, recipient, content);
+        } else if (roomId != null) {
+            application.sendMessage(user, roomId, content);
+        } else {
+            application.sendMessage(user, content);
+        }
+        return true;
+    }
+
+    private static Map<String, String> parseQuery(String target) {
+        Map<String, String> query = new HashMap<>();
+        int start = target.indexOf('?');
+        if (start < 0) {
+            return query;
+        }
+        for (String pair : target.substring(start + 1).split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                query.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return query;
+    }
+
+    static String acceptKey(String key) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            byte[] digest = sha1.digest((key + WEBSOCKET_GUID).getBytes(StandardCharsets.ISO_8859_1));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is required by every Java platform", e);
+        }
+    }
+}
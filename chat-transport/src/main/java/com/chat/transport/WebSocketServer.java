@@ -0,0 +1,59 @@
+package com.chat.transport;
+
+import com.chat.core.ChatApplication;
+import com.chat.core.ChatMessage;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// A WebSocket endpoint that feeds a ChatApplication; implementations differ only in their threading model
+public interface WebSocketServer {
+    void start(ChatApplication application);
+
+    // Useful when bound to port 0, e.g. for loopback tests
+    int getPort();
+
+    // Most recent inbound messages, oldest first; null when none are waiting
+    ChatMessage pollInbound();
+
+    void close();
+
+    static WebSocketServer create(TransportMode mode, InetSocketAddress bindAddress, long pingIntervalMillis,
+                                  int platformThreads) {
+        switch (mode) {
+            case NIO_SELECTOR:
+                return new NioWebSocketServer(bindAddress, pingIntervalMillis);
+            case PLATFORM_THREADS:
+                // Each connection holds a reader and a writer thread. The pool has no queue, so once every thread
+                // is taken a new client is refused rather than left waiting, unserved, behind the others.
+                AtomicInteger threadCount = new AtomicInteger();
+                return new BlockingWebSocketServer(bindAddress, pingIntervalMillis,
+                        new ThreadPoolExecutor(platformThreads, platformThreads, 0, TimeUnit.MILLISECONDS,
+                                new SynchronousQueue<>(), task -> {
+                                    Thread thread = new Thread(task, "chat-websocket-" + threadCount.incrementAndGet());
+                                    thread.setDaemon(true);
+                                    return thread;
+                                }, new ThreadPoolExecutor.AbortPolicy()));
+            case VIRTUAL_THREADS:
+                return new BlockingWebSocketServer(bindAddress, pingIntervalMillis,
+                        virtualThreadExecutor());
+            default:
+                throw new IllegalArgumentException("Unknown transport mode: " + mode);
+        }
+    }
+
+    // Looked up reflectively so the rest of the server still runs on Java 17
+    private static ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException(
+                    "Virtual threads need Java 21 or later; running on " + Runtime.version(), e);
+        }
+    }
+}
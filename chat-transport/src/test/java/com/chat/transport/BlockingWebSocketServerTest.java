@@ -0,0 +1,133 @@
+package com.chat.transport;
+
+import com.chat.core.ChatApplication;
+import com.chat.core.ChatMessage;
+import com.chat.core.ChatRoomManager;
+import com.chat.core.CommunicationAdapter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BlockingWebSocketServerTest {
+    private static final CommunicationAdapter NO_ADAPTER = new CommunicationAdapter() {
+        @Override
+        public void sendMessage(ChatMessage message) {
+        }
+
+        @Override
+        public ChatMessage receiveMessage() {
+            return null;
+        }
+    };
+
+    private final List<Socket> clients = new ArrayList<>();
+    private ChatRoomManager manager;
+    private WebSocketServer server;
+
+    @BeforeEach
+    void startManager() {
+        manager = new ChatRoomManager();
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        for (Socket client : clients) {
+            client.close();
+        }
+        if (server != null) {
+            server.close();
+        }
+        manager.shutdown();
+    }
+
+    // Two threads serve exactly one connection: its reader and its writer
+    @Test
+    void refusesClientsOnceEveryPlatformThreadIsTaken() throws IOException {
+        start(2);
+        Socket alice = connect("alice", "lobby");
+        sendText(alice, "hello");
+        // The echo comes from alice's writer, so both of the pool's threads are now in use
+        assertEquals(0x82, readFrameOpcode(alice));
+
+        Socket bob = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+        clients.add(bob);
+        bob.setSoTimeout(5000);
+        assertEquals(-1, bob.getInputStream().read());
+    }
+
+    // The frame is queued during the handshake, before bob's writer exists to be woken, and the ping interval
+    // is far longer than the read timeout, so only a remembered wake-up delivers it in time
+    @Test
+    void deliversFramesQueuedBeforeTheWriterStarts() throws IOException {
+        start(8);
+        Socket alice = connect("alice", "lobby");
+        sendText(alice, "/msg bob while you were away");
+        sendText(alice, "hello");
+        assertEquals(0x82, readFrameOpcode(alice)); // alice's own room message: the private one was handled first
+
+        Socket bob = connect("bob", "lobby");
+        assertEquals(0x82, readFrameOpcode(bob));
+    }
+
+    private void start(int platformThreads) {
+        server = WebSocketServer.create(TransportMode.PLATFORM_THREADS,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 30_000, platformThreads);
+        server.start(new ChatApplication(NO_ADAPTER, manager));
+    }
+
+    private Socket connect(String user, String room) throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+        clients.add(socket);
+        socket.setSoTimeout(5000);
+        socket.getOutputStream().write(("GET /chat?user=" + user + "&room=" + room + " HTTP/1.1\r\n"
+                + "Host: localhost\r\n"
+                + "Upgrade: websocket\r\n"
+                + "Connection: Upgrade\r\n"
+                + "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\n"
+                + "Sec-WebSocket-Version: 13\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        while (!head.toString(StandardCharsets.ISO_8859_1).endsWith("\r\n\r\n")) {
+            int b = socket.getInputStream().read();
+            assertTrue(b >= 0, "connection closed during the handshake");
+            head.write(b);
+        }
+        assertTrue(head.toString(StandardCharsets.ISO_8859_1).startsWith("HTTP/1.1 101"));
+        return socket;
+    }
+
+    // Client frames must be masked; a zero mask leaves the payload as it is
+    private static void sendText(Socket socket, String text) throws IOException {
+        byte[] payload = text.getBytes(StandardCharsets.UTF_8);
+        OutputStream out = socket.getOutputStream();
+        out.write(new byte[] {(byte) 0x81, (byte) (0x80 | payload.length), 0, 0, 0, 0});
+        out.write(payload);
+        out.flush();
+    }
+
+    // Reads one whole server frame and returns its first byte, FIN and opcode together
+    static int readFrameOpcode(Socket socket) throws IOException {
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        int first = in.readUnsignedByte();
+        int length = in.readUnsignedByte();
+        if (length == 126) {
+            length = in.readUnsignedShort();
+        } else if (length == 127) {
+            length = (int) in.readLong();
+        }
+        in.readFully(new byte[length]);
+        return first;
+    }
+}
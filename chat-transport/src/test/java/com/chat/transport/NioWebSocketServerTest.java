@@ -0,0 +1,158 @@
+package com.chat.transport;
+
+import com.chat.core.ChatApplication;
+import com.chat.core.ChatMessage;
+import com.chat.core.ChatRoomManager;
+import com.chat.core.CommunicationAdapter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NioWebSocketServerTest {
+    private static final CommunicationAdapter NO_ADAPTER = new CommunicationAdapter() {
+        @Override
+        public void sendMessage(ChatMessage message) {
+        }
+
+        @Override
+        public ChatMessage receiveMessage() {
+            return null;
+        }
+    };
+
+    private final List<Socket> clients = new ArrayList<>();
+    private ChatRoomManager manager;
+    private WebSocketServer server;
+
+    @BeforeEach
+    void startManager() {
+        manager = new ChatRoomManager();
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        for (Socket client : clients) {
+            client.close();
+        }
+        if (server != null) {
+            server.close();
+        }
+        manager.shutdown();
+    }
+
+    @Test
+    void echoesATextFrameBackToTheRoom() throws IOException {
+        start(30_000);
+        Socket alice = connect("alice", "lobby");
+        sendFrame(alice, 0x81, "hello");
+        assertEquals(0x82, BlockingWebSocketServerTest.readFrameOpcode(alice));
+    }
+
+    // The join runs on the inbound worker, so a frame that arrives with the handshake waits for it
+    @Test
+    void framesBehindTheHandshakeWaitForTheJoin() throws IOException {
+        start(30_000);
+        Socket alice = open();
+        ByteArrayOutputStream request = new ByteArrayOutputStream();
+        request.writeBytes(handshake("alice", "lobby"));
+        request.writeBytes(frame(0x81, "hello"));
+        alice.getOutputStream().write(request.toByteArray());
+        readAccept(alice);
+        assertEquals(0x82, BlockingWebSocketServerTest.readFrameOpcode(alice));
+    }
+
+    @Test
+    void answersAPingWithAPong() throws IOException {
+        start(30_000);
+        Socket alice = connect("alice", "lobby");
+        sendFrame(alice, 0x89, "are you there");
+        DataInputStream in = new DataInputStream(alice.getInputStream());
+        assertEquals(0x8A, in.readUnsignedByte());
+        byte[] payload = new byte[in.readUnsignedByte()];
+        in.readFully(payload);
+        assertEquals("are you there", new String(payload, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void pingsAnIdleClientThenClosesIt() throws IOException {
+        start(200);
+        Socket alice = connect("alice", "lobby");
+        assertEquals(0x89, BlockingWebSocketServerTest.readFrameOpcode(alice));
+        assertEquals(-1, alice.getInputStream().read());
+    }
+
+    @Test
+    void closesAClientThatNeverFinishesItsHandshake() throws IOException {
+        start(200);
+        Socket slow = open();
+        slow.getOutputStream().write("GET /chat?user=slow".getBytes(StandardCharsets.ISO_8859_1));
+        assertEquals(-1, slow.getInputStream().read());
+    }
+
+    private void start(long pingIntervalMillis) {
+        server = WebSocketServer.create(TransportMode.NIO_SELECTOR,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), pingIntervalMillis, 0);
+        server.start(new ChatApplication(NO_ADAPTER, manager));
+    }
+
+    private Socket open() throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+        clients.add(socket);
+        socket.setSoTimeout(5000);
+        return socket;
+    }
+
+    private Socket connect(String user, String room) throws IOException {
+        Socket socket = open();
+        socket.getOutputStream().write(handshake(user, room));
+        readAccept(socket);
+        return socket;
+    }
+
+    private static byte[] handshake(String user, String room) {
+        return ("GET /chat?user=" + user + "&room=" + room + " HTTP/1.1\r\n"
+                + "Host: localhost\r\n"
+                + "Upgrade: websocket\r\n"
+                + "Connection: Upgrade\r\n"
+                + "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\n"
+                + "Sec-WebSocket-Version: 13\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static void readAccept(Socket socket) throws IOException {
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        while (!head.toString(StandardCharsets.ISO_8859_1).endsWith("\r\n\r\n")) {
+            int b = socket.getInputStream().read();
+            assertTrue(b >= 0, "connection closed during the handshake");
+            head.write(b);
+        }
+        assertTrue(head.toString(StandardCharsets.ISO_8859_1).startsWith("HTTP/1.1 101"));
+    }
+
+    private static void sendFrame(Socket socket, int first, String text) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        out.write(frame(first, text));
+        out.flush();
+    }
+
+    // Client frames must be masked; a zero mask leaves the payload as it is
+    private static byte[] frame(int first, String text) {
+        byte[] payload = text.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        frame.writeBytes(new byte[] {(byte) first, (byte) (0x80 | payload.length), 0, 0, 0, 0});
+        frame.writeBytes(payload);
+        return frame.toByteArray();
+    }
+}